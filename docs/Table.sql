@@ -57,8 +57,8 @@ COMMENT ON COLUMN film_genre.genre_id IS 'Идентификатор жанра,
 CREATE TABLE IF NOT EXISTS users
 (
     id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    email    VARCHAR NOT NULL UNIQUE CHECK (email ~* '^[A-Z0-9._%+-]+@[A-Z0-9.-]+\.[A-Z]{2,}$'),
-    login    VARCHAR NOT NULL CHECK (login !~* '\s'),
+    email    VARCHAR NOT NULL UNIQUE CHECK (email ~ '^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\.[A-Za-z]{2,}$'),
+    login    VARCHAR NOT NULL CHECK (login !~ '\s'),
     name     VARCHAR,
     birthday DATE CHECK (birthday <= CURRENT_DATE)
     );
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность хранилищ с диалектом h2 и postgres. Для postgres по умолчанию берётся H2
+ * в режиме совместимости с PostgreSQL; замер на настоящем сервере - с пустой базой, заданной свойствами
+ * -Dfilmorate.bench.postgres-url (jdbc:postgresql://...), -Dfilmorate.bench.postgres-user
+ * и -Dfilmorate.bench.postgres-password.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class DialectBenchmark {
+
+    private static final String POSTGRES_MODE_URL = "jdbc:h2:mem:filmorate-bench-pg;MODE=PostgreSQL;"
+            + "DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    private static final int TOP_SIZE = 10;
+
+    public static class DialectState extends FilmorateState {
+
+        @Param({"h2", "postgres"})
+        public String dialect;
+
+        @Override
+        protected List<String> applicationArgs() {
+            return List.of("--filmorate.db.dialect=" + dialect);
+        }
+
+        @Override
+        protected String databaseUrl() {
+            return "h2".equals(dialect) ? super.databaseUrl()
+                    : System.getProperty("filmorate.bench.postgres-url", POSTGRES_MODE_URL);
+        }
+
+        @Override
+        protected String databaseUser() {
+            return "h2".equals(dialect) ? super.databaseUser()
+                    : System.getProperty("filmorate.bench.postgres-user", super.databaseUser());
+        }
+
+        @Override
+        protected String databasePassword() {
+            return "h2".equals(dialect) ? super.databasePassword()
+                    : System.getProperty("filmorate.bench.postgres-password", super.databasePassword());
+        }
+    }
+
+    // фильм из кэша сущностей или одним запросом с жанрами
+    @Benchmark
+    public Film getFilm(DialectState state) {
+        return state.filmService.findById(state.randomFilmId());
+    }
+
+    @Benchmark
+    public List<User> getFriends(DialectState state) {
+        return state.userService.getFriends(state.randomUserId(), null, null, false);
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms(DialectState state) {
+        return state.filmService.getTopFilms(TOP_SIZE);
+    }
+
+    // вставка без повторов: NOT EXISTS для h2, ON CONFLICT DO NOTHING для postgres
+    @Benchmark
+    public boolean addRemoveLike(DialectState state) {
+        long filmId = state.randomFilmId();
+        state.filmService.addLike(filmId, state.writer.getId());
+        return state.filmService.removeLike(filmId, state.writer.getId());
+    }
+
+    @Benchmark
+    public long addRemoveFriend(DialectState state) {
+        long friendId = state.randomUserId();
+        state.userService.addFriend(state.writer.getId(), friendId);
+        state.userService.removeFriend(state.writer.getId(), friendId);
+        return friendId;
+    }
+}
@@ -0,0 +1,231 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Приложение поверх встроенной H2, заполненной тестовыми данными заданного объёма.
+ */
+@State(Scope.Benchmark)
+public class FilmorateState {
+
+    private static final String DB_URL = "jdbc:h2:mem:filmorate-bench;DB_CLOSE_DELAY=-1";
+    private static final int GENRES_COUNT = 6;
+    private static final int MPA_COUNT = 5;
+    private static final int BATCH_SIZE = 5000;
+    private static final int PAGE_SIZE = 100;
+    // одинаковое зерно даёт одинаковые данные, поэтому результаты разных коммитов сравнимы
+    private static final long SEED = 42;
+
+    @Param({"10000"})
+    public int films;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"20"})
+    public int likesPerUser;
+
+    @Param({"50"})
+    public int friendsPerUser;
+
+    ConfigurableApplicationContext context;
+    FilmStorage filmStorage;
+    UserStorage userStorage;
+    FilmService filmService;
+    UserService userService;
+    RecommendationService recommendationService;
+    ObjectMapper objectMapper;
+
+    long[] filmIds;
+    long[] userIds;
+    // пользователь без лайков и друзей для операций записи, которые сразу откатываются обратно
+    User writer;
+    // первые страницы GET /films и GET /users для замеров сериализации
+    List<Film> filmPage;
+    List<User> userPage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(databaseUrl(), databaseUser(),
+                databasePassword());
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+        populator.execute(dataSource);
+        seed(new JdbcTemplate(dataSource));
+
+        // аргументы командной строки важнее ./application.properties, поэтому берётся база бенчмарка
+        List<String> args = new ArrayList<>(List.of("--spring.datasource.url=" + databaseUrl(),
+                "--spring.datasource.driver-class-name=" + driverClassName(),
+                "--spring.datasource.username=" + databaseUser(),
+                "--spring.datasource.password=" + databasePassword(),
+                "--spring.sql.init.mode=never",
+                "--logging.level.root=WARN",
+                "--logging.level.org.zalando.logbook=WARN"));
+        args.addAll(applicationArgs());
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(webApplicationType())
+                .logStartupInfo(false)
+                .run(args.toArray(String[]::new));
+        filmStorage = context.getBean("filmDbStorage", FilmStorage.class);
+        userStorage = context.getBean("userDbStorage", UserStorage.class);
+        filmService = context.getBean(FilmService.class);
+        userService = context.getBean(UserService.class);
+        recommendationService = context.getBean(RecommendationService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        filmIds = jdbcTemplate.queryForList("SELECT id FROM films ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue).toArray();
+        userIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue).toArray();
+        writer = userStorage.create(new User(null, "writer@bench.ru", "writer", "writer",
+                LocalDate.of(1990, 1, 1), null));
+        filmPage = filmService.findPage(0L, PAGE_SIZE);
+        userPage = userService.findPage(0L, PAGE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        // база в памяти переживает закрытие пула, следующий прогон в том же JVM должен начать с пустой
+        if (databaseUrl().startsWith("jdbc:h2:")) {
+            new JdbcTemplate(new DriverManagerDataSource(databaseUrl(), databaseUser(), databasePassword()))
+                    .execute("SHUTDOWN");
+        }
+    }
+
+    // база для замеров; наследники подставляют другую, она должна быть пустой: данные создаются при запуске
+    protected String databaseUrl() {
+        return DB_URL;
+    }
+
+    protected String databaseUser() {
+        return "sa";
+    }
+
+    protected String databasePassword() {
+        return "";
+    }
+
+    private String driverClassName() {
+        return databaseUrl().startsWith("jdbc:postgresql:") ? "org.postgresql.Driver" : "org.h2.Driver";
+    }
+
+    // тип приложения и дополнительные аргументы запуска для наследников, которым нужен HTTP-сервер
+    protected WebApplicationType webApplicationType() {
+        return WebApplicationType.NONE;
+    }
+
+    protected List<String> applicationArgs() {
+        return List.of();
+    }
+
+    long randomFilmId() {
+        return filmIds[ThreadLocalRandom.current().nextInt(filmIds.length)];
+    }
+
+    long randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+
+    Film newFilm() {
+        return new Film(null, "Бенчмарк", "Фильм для замеров", LocalDate.of(2000, 1, 1), 120,
+                new MpaRating(1L, null), new LinkedHashSet<>());
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        Random random = new Random(SEED);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= films; i++) {
+            rows.add(new Object[]{"Фильм " + i, "Описание фильма " + i,
+                    Date.valueOf(LocalDate.of(1950 + random.nextInt(70), 1 + random.nextInt(12), 1)),
+                    60 + random.nextInt(120), 1 + random.nextInt(MPA_COUNT)});
+        }
+        batch(jdbcTemplate, "INSERT INTO films (name, description, release_date, duration, mpa_id) " +
+                "VALUES (?, ?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= users; i++) {
+            rows.add(new Object[]{"user" + i + "@bench.ru", "user" + i, "Пользователь " + i,
+                    Date.valueOf(LocalDate.of(1960 + random.nextInt(40), 1 + random.nextInt(12), 1))});
+        }
+        batch(jdbcTemplate, "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)", rows);
+
+        long[] seededFilms = jdbcTemplate.queryForList("SELECT id FROM films ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue).toArray();
+        long[] seededUsers = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue).toArray();
+
+        rows.clear();
+        for (long filmId : seededFilms) {
+            for (long genreId : pick(random, GENRES_COUNT, 1 + random.nextInt(3))) {
+                rows.add(new Object[]{filmId, genreId + 1});
+            }
+        }
+        batch(jdbcTemplate, "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", rows);
+
+        rows.clear();
+        for (long userId : seededUsers) {
+            for (long index : pick(random, seededFilms.length, likesPerUser)) {
+                rows.add(new Object[]{seededFilms[(int) index], userId});
+            }
+        }
+        batch(jdbcTemplate, "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", rows);
+        jdbcTemplate.update("UPDATE films SET likes_count = " +
+                "(SELECT COUNT(*) FROM film_likes WHERE film_likes.film_id = films.id)");
+
+        rows.clear();
+        for (long userId : seededUsers) {
+            for (long index : pick(random, seededUsers.length, friendsPerUser)) {
+                if (seededUsers[(int) index] != userId) {
+                    rows.add(new Object[]{userId, seededUsers[(int) index]});
+                }
+            }
+        }
+        batch(jdbcTemplate, "INSERT INTO friendship (user_id, friend_id) VALUES (?, ?)", rows);
+    }
+
+    // count различных чисел из диапазона [0, bound)
+    private static Set<Long> pick(Random random, int bound, int count) {
+        Set<Long> result = new HashSet<>();
+        int target = Math.min(count, bound);
+        while (result.size() < target) {
+            result.add((long) random.nextInt(bound));
+        }
+        return result;
+    }
+
+    private static void batch(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+}
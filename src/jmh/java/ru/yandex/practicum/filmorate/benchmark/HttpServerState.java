@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Приложение с HTTP-сервером на случайном порту для нагрузочных тестов.
+ */
+public class HttpServerState extends FilmorateState {
+
+    HttpClient client;
+    String baseUrl;
+
+    @Override
+    protected WebApplicationType webApplicationType() {
+        return WebApplicationType.SERVLET;
+    }
+
+    @Override
+    protected List<String> applicationArgs() {
+        List<String> args = new ArrayList<>(List.of("--server.port=0"));
+        args.addAll(serverArgs());
+        return args;
+    }
+
+    // настройки сервера, которые сравнивает конкретный тест
+    protected List<String> serverArgs() {
+        return List.of();
+    }
+
+    @Setup(Level.Iteration)
+    public void connect() {
+        if (client == null) {
+            client = HttpClient.newHttpClient();
+            baseUrl = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        }
+    }
+
+    int get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + path + " вернул " + response.statusCode());
+        }
+        return response.body().length;
+    }
+}
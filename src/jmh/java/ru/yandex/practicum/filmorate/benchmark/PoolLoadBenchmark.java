@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест: пропускная способность GET /films и GET /users при разном размере пула соединений.
+ * Каждый поток JMH - отдельный клиент, который отправляет запросы без пауз.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(64)
+public class PoolLoadBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    public static class PoolState extends HttpServerState {
+
+        @Param({"1", "2", "10"})
+        public int poolSize;
+
+        @Override
+        protected List<String> serverArgs() {
+            return List.of("--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                    "--spring.datasource.hikari.minimum-idle=" + poolSize);
+        }
+    }
+
+    @Benchmark
+    public int films(PoolState state) throws IOException, InterruptedException {
+        return state.get("/films?afterId=" + state.randomFilmId() + "&limit=" + PAGE_SIZE);
+    }
+
+    @Benchmark
+    public int users(PoolState state) throws IOException, InterruptedException {
+        return state.get("/users?afterId=" + state.randomUserId() + "&limit=" + PAGE_SIZE);
+    }
+}
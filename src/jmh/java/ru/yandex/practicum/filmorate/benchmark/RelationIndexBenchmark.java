@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы к таблицам связей без кэшей и индексов в памяти: только неявные индексы H2 по внешним ключам
+ * (indexes=fk) или вместе с составными индексами миграции 1 (indexes=composite). По умолчанию в каждой
+ * таблице связей по миллиону строк, как в замерах, по которым индексы добавлялись:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RelationIndexBenchmark -f 1"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+// таблицы связей и их индексы лежат в куче; при размере кучи по умолчанию замер упирается в сборщик мусора
+@Fork(jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RelationIndexBenchmark {
+
+    private static final String DB_URL = "jdbc:h2:mem:filmorate-bench-relations;DB_CLOSE_DELAY=-1";
+    private static final int BATCH_SIZE = 5000;
+    private static final long SEED = 42;
+
+    @State(Scope.Benchmark)
+    public static class RelationState {
+
+        @Param({"fk", "composite"})
+        public String indexes;
+
+        @Param({"100000"})
+        public int rows;
+
+        // связей на пользователя и на фильм; жанров заводится столько же
+        @Param({"10"})
+        public int perRow;
+
+        SingleConnectionDataSource dataSource;
+        JdbcTemplate jdbcTemplate;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            dataSource = new SingleConnectionDataSource(DB_URL, "sa", "", true);
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                    new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+            populator.setSqlScriptEncoding("UTF-8");
+            populator.execute(dataSource);
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            seed();
+            if ("composite".equals(indexes)) {
+                ResourceDatabasePopulator migration = new ResourceDatabasePopulator(
+                        new ClassPathResource("migration/V1__relation_keys.sql"));
+                migration.setSqlScriptEncoding("UTF-8");
+                migration.execute(dataSource);
+            }
+            jdbcTemplate.execute("ANALYZE");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            jdbcTemplate.execute("SHUTDOWN");
+            dataSource.destroy();
+        }
+
+        long randomId() {
+            return 1 + ThreadLocalRandom.current().nextInt(rows);
+        }
+
+        // id в таблицах идут с 1 подряд: база создаётся заново на каждый прогон
+        private void seed() {
+            Random random = new Random(SEED);
+            List<Object[]> batch = new ArrayList<>();
+            for (int i = 1; i <= rows; i++) {
+                batch.add(new Object[]{"user" + i + "@bench.ru", "user" + i, "user" + i});
+            }
+            insert("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, '1990-01-01')", batch);
+            batch.clear();
+            for (int i = 1; i <= rows; i++) {
+                batch.add(new Object[]{"Фильм " + i});
+            }
+            insert("INSERT INTO films (name, description, release_date, duration, mpa_id) "
+                    + "VALUES (?, '', '2000-01-01', 90, 1)", batch);
+            jdbcTemplate.update("INSERT INTO genre (name) SELECT 'Жанр ' || x FROM SYSTEM_RANGE(1, ?)", perRow);
+
+            // у каждого пользователя perRow друзей и лайков подряд со случайного смещения, у фильма - perRow жанров
+            List<Object[]> friendships = new ArrayList<>();
+            List<Object[]> likes = new ArrayList<>();
+            List<Object[]> genres = new ArrayList<>();
+            for (int i = 1; i <= rows; i++) {
+                int offset = random.nextInt(rows);
+                for (int k = 1; k <= perRow; k++) {
+                    friendships.add(new Object[]{i, 1 + (offset + k) % rows});
+                    likes.add(new Object[]{1 + (offset + k) % rows, i});
+                    genres.add(new Object[]{i, k});
+                }
+            }
+            friendships.removeIf(row -> row[0].equals(row[1]));
+            insert("INSERT INTO friendship (user_id, friend_id) VALUES (?, ?)", friendships);
+            insert("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", likes);
+            insert("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", genres);
+        }
+
+        private void insert(String sql, List<Object[]> rows) {
+            for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Long> getFriends(RelationState state) {
+        return state.jdbcTemplate.queryForList("SELECT friend_id FROM friendship WHERE user_id = ?",
+                Long.class, state.randomId());
+    }
+
+    @Benchmark
+    public List<Long> getCommonFriends(RelationState state) {
+        return state.jdbcTemplate.queryForList("SELECT f1.friend_id FROM friendship f1 "
+                        + "JOIN friendship f2 ON f1.friend_id = f2.friend_id WHERE f1.user_id = ? AND f2.user_id = ?",
+                Long.class, state.randomId(), state.randomId());
+    }
+
+    @Benchmark
+    public List<Long> getGenresForFilm(RelationState state) {
+        return state.jdbcTemplate.queryForList("SELECT genre_id FROM film_genre WHERE film_id = ?",
+                Long.class, state.randomId());
+    }
+
+    @Benchmark
+    public Boolean likeExists(RelationState state) {
+        return state.jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)",
+                Boolean.class, state.randomId(), state.randomId());
+    }
+}
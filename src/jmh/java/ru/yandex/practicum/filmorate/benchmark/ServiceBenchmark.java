@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервисные операции и сериализация ответов контроллеров в JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceBenchmark {
+
+    private static final int TOP_SIZE = 10;
+    // id, которого нет в базе: путь ответа 404
+    private static final long MISSING_ID = Long.MAX_VALUE;
+
+    @Benchmark
+    public List<Film> getTopFilms(FilmorateState state) {
+        return state.filmService.getTopFilms(TOP_SIZE);
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends(FilmorateState state) {
+        return state.userService.getCommonFriends(state.randomUserId(), state.randomUserId(), null, null, false);
+    }
+
+    // фильм и пользователь, которых нет: запрос к базе и исключение, которое контроллер превращает в 404
+    @Benchmark
+    public String getMissingFilm(FilmorateState state) {
+        try {
+            return state.filmService.findById(MISSING_ID).getName();
+        } catch (NotFoundException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    @Benchmark
+    public String getMissingUser(FilmorateState state) {
+        try {
+            return state.userService.getUserById(MISSING_ID).getName();
+        } catch (NotFoundException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    @Benchmark
+    public List<User> getFriends(FilmorateState state) {
+        return state.userService.getFriends(state.randomUserId(), null, null, false);
+    }
+
+    // лайк через сервис: проверки существования фильма и пользователя идут через кэш сущностей
+    @Benchmark
+    public boolean addRemoveLike(FilmorateState state) {
+        long filmId = state.randomFilmId();
+        state.filmService.addLike(filmId, state.writer.getId());
+        return state.filmService.removeLike(filmId, state.writer.getId());
+    }
+
+    // добавление и удаление друга: распределение времени (p99) вместе с проверками существования пользователей
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public long addRemoveFriend(FilmorateState state) {
+        long friendId = state.randomUserId();
+        state.userService.addFriend(state.writer.getId(), friendId);
+        state.userService.removeFriend(state.writer.getId(), friendId);
+        return friendId;
+    }
+
+    @Benchmark
+    public List<Film> getRecommendations(FilmorateState state) {
+        return state.recommendationService.getRecommendations(state.randomUserId(), TOP_SIZE);
+    }
+
+    // полное построение индекса рекомендаций по film_likes
+    @Benchmark
+    public void rebuildRecommendations(FilmorateState state) {
+        state.recommendationService.rebuild();
+    }
+
+    // тот же ObjectMapper, что использует Spring MVC при ответе GET /films, без обращения к базе
+    @Benchmark
+    public byte[] filmPageToJson(FilmorateState state) throws JsonProcessingException {
+        return state.objectMapper.writeValueAsBytes(state.filmPage);
+    }
+
+    @Benchmark
+    public byte[] userPageToJson(FilmorateState state) throws JsonProcessingException {
+        return state.objectMapper.writeValueAsBytes(state.userPage);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции FilmStorage и UserStorage на заполненной базе.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int TOP_SIZE = 10;
+
+    @Benchmark
+    public Collection<Film> filmFindAll(FilmorateState state) {
+        return state.filmStorage.findAll();
+    }
+
+    @Benchmark
+    public List<Film> filmFindPage(FilmorateState state) {
+        return state.filmStorage.findPage(state.randomFilmId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Optional<Film> filmGetById(FilmorateState state) {
+        return state.filmStorage.getFilmById(state.randomFilmId());
+    }
+
+    @Benchmark
+    public List<Film> filmGetTop(FilmorateState state) {
+        return state.filmStorage.getTopFilms(TOP_SIZE);
+    }
+
+    @Benchmark
+    public List<Film> filmSearch(FilmorateState state) {
+        return state.filmStorage.search("фильм " + state.randomFilmId(), EnumSet.allOf(FilmSearchIndex.Field.class),
+                TOP_SIZE);
+    }
+
+    @Benchmark
+    public List<Film> filmGetTopByGenreAndYear(FilmorateState state) {
+        return state.filmStorage.getTopFilms(TOP_SIZE, 1L, 2000);
+    }
+
+    // создание вместе с удалением, чтобы объём базы не рос от итерации к итерации
+    @Benchmark
+    public boolean filmCreateDelete(FilmorateState state) {
+        Film film = state.filmStorage.create(state.newFilm());
+        return state.filmStorage.delete(film.getId());
+    }
+
+    @Benchmark
+    public Film filmUpdate(FilmorateState state) {
+        Film film = state.filmStorage.getFilmById(state.randomFilmId()).orElseThrow();
+        return state.filmStorage.update(film);
+    }
+
+    @Benchmark
+    public boolean filmAddRemoveLike(FilmorateState state) {
+        long filmId = state.randomFilmId();
+        state.filmStorage.addLike(filmId, state.writer.getId());
+        return state.filmStorage.removeLike(filmId, state.writer.getId());
+    }
+
+    @Benchmark
+    public Collection<User> userFindAll(FilmorateState state) {
+        return state.userStorage.findAll();
+    }
+
+    @Benchmark
+    public List<User> userFindPage(FilmorateState state) {
+        return state.userStorage.findPage(state.randomUserId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Optional<User> userGetById(FilmorateState state) {
+        return state.userStorage.getUserById(state.randomUserId());
+    }
+
+    @Benchmark
+    public boolean userCreateDelete(FilmorateState state) {
+        User user = state.userStorage.create(new User(null, "u" + System.nanoTime() + "@bench.ru", "login",
+                "name", LocalDate.of(1990, 1, 1), null));
+        return state.userStorage.delete(user.getId());
+    }
+
+    @Benchmark
+    public User userUpdate(FilmorateState state) {
+        return state.userStorage.update(state.writer);
+    }
+
+    @Benchmark
+    public List<User> userFindFriends(FilmorateState state) {
+        return state.userStorage.findFriends(state.randomUserId(), 0, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<User> userFindCommonFriends(FilmorateState state) {
+        return state.userStorage.findCommonFriends(state.randomUserId(), state.randomUserId(), 0, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<User> userFindFriendSuggestions(FilmorateState state) {
+        return state.userStorage.findFriendSuggestions(state.randomUserId(), 10);
+    }
+
+    @Benchmark
+    public void userAddRemoveFriend(FilmorateState state) {
+        long friendId = state.randomUserId();
+        state.userStorage.addFriend(state.writer.getId(), friendId);
+        state.userStorage.removeFriend(state.writer.getId(), friendId);
+    }
+}
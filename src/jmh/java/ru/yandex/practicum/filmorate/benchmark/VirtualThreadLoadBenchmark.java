@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Нагрузочный тест: clients одновременных клиентов, каждый выполняет requestsPerClient запросов подряд.
+ * Замеряется время, за которое сервер обслужит всех клиентов, на пуле потоков Tomcat
+ * и на виртуальных потоках (virtualThreads=true).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class VirtualThreadLoadBenchmark {
+
+    private static final int TOP_SIZE = 10;
+
+    public static class ServerState extends HttpServerState {
+
+        @Param({"false", "true"})
+        public boolean virtualThreads;
+
+        @Param({"5000"})
+        public int clients;
+
+        @Param({"4"})
+        public int requestsPerClient;
+
+        @Override
+        protected List<String> serverArgs() {
+            return List.of("--spring.threads.virtual.enabled=" + virtualThreads);
+        }
+
+        // клиенты - виртуальные потоки, чтобы генератор нагрузки сам не упирался в число потоков
+        void runClients(Supplier<String> path) throws InterruptedException {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger failures = new AtomicInteger();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < clients; i++) {
+                    executor.submit(() -> {
+                        start.await();
+                        for (int request = 0; request < requestsPerClient; request++) {
+                            try {
+                                get(path.get());
+                            } catch (Exception e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+                start.countDown();
+            }
+            if (failures.get() > 0) {
+                throw new IllegalStateException("Неуспешных запросов: " + failures.get());
+            }
+        }
+    }
+
+    @Benchmark
+    public void popularFilms(ServerState state) throws InterruptedException {
+        state.runClients(() -> "/films/popular?count=" + TOP_SIZE);
+    }
+
+    @Benchmark
+    public void friends(ServerState state) throws InterruptedException {
+        state.runClients(() -> "/users/" + state.randomUserId() + "/friends");
+    }
+}
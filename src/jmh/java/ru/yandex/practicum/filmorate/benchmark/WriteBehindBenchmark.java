@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лайки и дружба с записью в базу в каждом запросе и с отложенной записью пачками.
+ * Каждая операция добавляет связь пользователя writer и сразу удаляет её, поэтому данные между итерациями
+ * не растут, а при отложенной записи пара гасится в буфере, не доходя до базы.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class WriteBehindBenchmark {
+
+    public static class WriteBehindState extends FilmorateState {
+
+        @Param({"false", "true"})
+        public boolean writeBehind;
+
+        @Override
+        protected List<String> applicationArgs() {
+            return List.of("--filmorate.write-behind.enabled=" + writeBehind);
+        }
+    }
+
+    @Benchmark
+    public boolean likeToggle(WriteBehindState state) {
+        long filmId = state.randomFilmId();
+        state.filmService.addLike(filmId, state.writer.getId());
+        return state.filmService.removeLike(filmId, state.writer.getId());
+    }
+
+    @Benchmark
+    public long friendToggle(WriteBehindState state) {
+        long friendId = state.randomUserId();
+        state.userService.addFriend(state.writer.getId(), friendId);
+        state.userService.removeFriend(state.writer.getId(), friendId);
+        return friendId;
+    }
+}
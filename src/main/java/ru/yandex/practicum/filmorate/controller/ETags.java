@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Условные GET по ETag. Для фильмов и пользователей ETag строится из id и версии строки:
+ * при совпадении с If-None-Match отвечается 304 по одной версии, без загрузки сущности.
+ * Для справочников ETag - SHA-256 сериализованного ответа, а ответ кэшируется клиентом на время max-age.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(String kind, long id, long version) {
+        return "\"" + kind + "-" + id + "-" + version + "\"";
+    }
+
+    // 304 по версии, если заголовок If-None-Match совпал, иначе сущность целиком с текущим ETag
+    static <T> ResponseEntity<T> conditional(WebRequest request, String kind, long id, Supplier<Optional<Long>> version,
+                                             Supplier<T> entity, ToLongFunction<T> versionOf) {
+        if (request.getHeader("If-None-Match") != null) {
+            Optional<Long> current = version.get();
+            if (current.isPresent()) {
+                String etag = of(kind, id, current.get());
+                if (request.checkNotModified(etag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+                }
+            }
+        }
+        T body = entity.get();
+        return ResponseEntity.ok().eTag(of(kind, id, versionOf.applyAsLong(body))).body(body);
+    }
+
+    // справочник: ETag по содержимому и публичное кэширование на maxAge;
+    // на совпавший If-None-Match Spring сам отвечает 304 без тела
+    static <T> ResponseEntity<T> dictionary(String kind, T body, Duration maxAge, ObjectMapper objectMapper) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAge).cachePublic())
+                .eTag("\"" + kind + "-" + digest(body, objectMapper) + "\"")
+                .body(body);
+    }
+
+    // первые 128 бит SHA-256 от JSON ответа: в отличие от hashCode, у разного содержимого практически не совпадают
+    private static String digest(Object body, ObjectMapper objectMapper) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(body));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new InternalServerException("Не удалось вычислить ETag справочника: " + e.getMessage());
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.*;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -24,21 +34,49 @@ public class FilmController {
 
     private final GenreService genreService;
 
+    private final ObjectMapper objectMapper;
+
     @Autowired
-    public FilmController(FilmService filmService, GenreService genreService) {
+    public FilmController(FilmService filmService, GenreService genreService, ObjectMapper objectMapper) {
         this.filmService = filmService;
         this.genreService = genreService;
+        this.objectMapper = objectMapper;
     }
 
+    // без параметров возвращает все фильмы, с afterId/limit - страницу по возрастанию id
     @GetMapping
-    public Collection<Film> findAll() {
-        return filmService.findAll();
+    public Collection<Film> findAll(@RequestParam(required = false) Long afterId,
+                                    @RequestParam(required = false) Integer limit) {
+        if (afterId == null && limit == null) {
+            return filmService.findAll();
+        }
+        return filmService.findPage(afterId, limit);
+    }
+
+    // потоковая выгрузка всех фильмов в формате NDJSON
+    @GetMapping(produces = NdjsonStreams.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        log.info("Потоковая выгрузка всех фильмов");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonStreams.MEDIA_TYPE))
+                .body(NdjsonStreams.body(objectMapper, filmService::streamAll));
+    }
+
+    // поиск по началам слов в названии и описании, результаты по убыванию лайков
+    @GetMapping("/search")
+    public List<Film> search(@RequestParam String query,
+                             @RequestParam(required = false) String by,
+                             @RequestParam(required = false) Integer limit) {
+        log.info("Поиск фильмов: {}", query);
+        return filmService.search(query, by, limit);
     }
 
+    // с If-None-Match сначала сравнивается версия фильма: при совпадении 304 без чтения жанров и рейтинга
     @GetMapping("/{id}")
-    public Film getFilmById(@PathVariable Long id) {
+    public ResponseEntity<Film> getFilmById(@PathVariable Long id, WebRequest request) {
         log.info("Поиск фильма по id: {}", id);
-        return filmService.findById(id);
+        return ETags.conditional(request, "film", id, () -> filmService.findVersion(id),
+                () -> filmService.findById(id), Film::getVersion);
     }
 
     @PostMapping
@@ -55,6 +93,26 @@ public class FilmController {
         }
     }
 
+    // пакетный импорт: JSON-массив фильмов или NDJSON, читается потоково по одному элементу;
+    // элементы, которые не удалось преобразовать в фильм, отклоняются по отдельности,
+    // 400 отвечается только на поток, который не разбирается как JSON
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonStreams.MEDIA_TYPE})
+    public List<FilmImportResult> importFilms(HttpServletRequest request) throws IOException {
+        log.info("Пакетный импорт фильмов");
+        try (MappingIterator<JsonNode> items = objectMapper.readerFor(JsonNode.class)
+                .readValues(request.getInputStream())) {
+            return filmService.importFilms(items);
+        } catch (JsonProcessingException ex) {
+            throw new ValidationException("Некорректные данные для импорта: " + ex.getOriginalMessage());
+        } catch (RuntimeException ex) {
+            // ошибки разбора потока MappingIterator оборачивает в непроверяемые исключения
+            if (ex.getCause() instanceof JsonProcessingException cause) {
+                throw new ValidationException("Некорректные данные для импорта: " + cause.getOriginalMessage());
+            }
+            throw ex;
+        }
+    }
+
     @PutMapping
     public ResponseEntity<?> update(@Valid @RequestBody Film film) {
         log.info("Обновление фильма: {}", film);
@@ -64,6 +122,8 @@ public class FilmController {
         } catch (ResourceNotFoundException ex) {
             log.error("Фильм не найден: {}", ex.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", ex.getMessage()));
+        } catch (MpaNotFoundException | GenreNotFoundException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", ex.getMessage()));
         } catch (Exception ex) {
             log.error("Ошибка при обновлении фильма: {}", ex.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Internal Server Error"));
@@ -90,9 +150,11 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
+    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                      @RequestParam(required = false) Long genreId,
+                                      @RequestParam(required = false) Integer year) {
         log.info("Вывод топ {} фильмов: ", count);
-        return filmService.getTopFilms(count);
+        return filmService.getTopFilms(count, genreId, year);
     }
 
     @PostMapping("/{filmId}/genres/{genreId}")
@@ -1,11 +1,14 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
+import java.time.Duration;
 import java.util.List;
 
 @RestController
@@ -14,20 +17,28 @@ public class GenreController {
 
     private final GenreService genreService;
 
+    // справочник меняется только вместе с data.sql, клиенты кэшируют его на это время
+    private final Duration maxAge;
+    private final ObjectMapper objectMapper;
+
     @Autowired
-    public GenreController(GenreService genreService) {
+    public GenreController(GenreService genreService,
+                           @Value("${filmorate.dictionaries.max-age:1d}") Duration maxAge,
+                           ObjectMapper objectMapper) {
         this.genreService = genreService;
+        this.maxAge = maxAge;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
     public ResponseEntity<List<Genre>> findAll() {
-        return ResponseEntity.ok(genreService.findAll());
+        return ETags.dictionary("genres", genreService.findAll(), maxAge, objectMapper);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Genre> findById(@PathVariable Long id) {
         return genreService.findById(id)
-                .map(ResponseEntity::ok)
+                .map(genre -> ETags.dictionary("genre", genre, maxAge, objectMapper))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 }
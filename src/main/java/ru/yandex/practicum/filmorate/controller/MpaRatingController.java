@@ -1,11 +1,14 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.service.MpaRatingService;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,20 +21,28 @@ public class MpaRatingController {
 
     private final MpaRatingService mpaRatingService;
 
+    // справочник меняется только вместе с data.sql, клиенты кэшируют его на это время
+    private final Duration maxAge;
+    private final ObjectMapper objectMapper;
+
     @Autowired
-    public MpaRatingController(MpaRatingService mpaRatingService) {
+    public MpaRatingController(MpaRatingService mpaRatingService,
+                               @Value("${filmorate.dictionaries.max-age:1d}") Duration maxAge,
+                               ObjectMapper objectMapper) {
         this.mpaRatingService = mpaRatingService;
+        this.maxAge = maxAge;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
     public ResponseEntity<List<MpaRating>> findAll() {
-        return ResponseEntity.ok(mpaRatingService.findAll());
+        return ETags.dictionary("mpa", mpaRatingService.findAll(), maxAge, objectMapper);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<MpaRating> findById(@PathVariable Long id) {
         Optional<MpaRating> mpaRating = mpaRatingService.findById(id);
-        return mpaRating.map(ResponseEntity::ok)
+        return mpaRating.map(rating -> ETags.dictionary("mpa", rating, maxAge, objectMapper))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 }
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Потоковая выдача коллекций в формате NDJSON: по одному JSON-объекту на строку.
+ * Объекты пишутся в ответ по мере чтения из хранилища и не накапливаются в памяти.
+ */
+final class NdjsonStreams {
+
+    static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private NdjsonStreams() {
+    }
+
+    static <T> StreamingResponseBody body(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        ObjectWriter writer = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return outputStream -> {
+            try {
+                source.accept(item -> {
+                    try {
+                        writer.writeValue(outputStream, item);
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.flush();
+        };
+    }
+}
@@ -1,13 +1,19 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.*;
@@ -19,25 +25,43 @@ public class UserController {
 
     private final UserService userService;
 
+    private final RecommendationService recommendationService;
+
+    private final ObjectMapper objectMapper;
+
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, RecommendationService recommendationService,
+                          ObjectMapper objectMapper) {
         this.userService = userService;
+        this.recommendationService = recommendationService;
+        this.objectMapper = objectMapper;
     }
 
-    // получение списка всех пользователей
+    // получение списка всех пользователей, с afterId/limit - страницы по возрастанию id
     @GetMapping
-    public Collection<User> findAll() {
-        return userService.findAll();
+    public Collection<User> findAll(@RequestParam(required = false) Long afterId,
+                                    @RequestParam(required = false) Integer limit) {
+        if (afterId == null && limit == null) {
+            return userService.findAll();
+        }
+        return userService.findPage(afterId, limit);
+    }
+
+    // потоковая выгрузка всех пользователей в формате NDJSON
+    @GetMapping(produces = NdjsonStreams.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        log.info("Потоковая выгрузка всех пользователей");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonStreams.MEDIA_TYPE))
+                .body(NdjsonStreams.body(objectMapper, userService::streamAll));
     }
 
+    // с If-None-Match сначала сравнивается версия пользователя: при совпадении 304 без чтения друзей
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
+    public ResponseEntity<User> getUserById(@PathVariable Long id, WebRequest request) {
         log.info("Поиск пользователя по id: {}", id);
-        User user = userService.getUserById(id);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-        }
-        return ResponseEntity.ok(user);
+        return ETags.conditional(request, "user", id, () -> userService.findVersion(id),
+                () -> userService.getUserById(id), User::getVersion);
     }
 
     // создание пользователя
@@ -88,20 +112,43 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
-    // получение списка друзей
+    // получение списка друзей, с afterId/limit - страницы по возрастанию id
     @GetMapping("/{id}/friends")
-    public ResponseEntity<Set<User>> getFriends(@PathVariable Long id) {
+    public ResponseEntity<List<User>> getFriends(@PathVariable Long id,
+                                                 @RequestParam(required = false) Long afterId,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(defaultValue = "false") boolean withFriendIds) {
         log.info("Получение списка друзей у пользваотеля с id: {}", id);
-        Set<User> friends = userService.getFriends(id);
+        List<User> friends = userService.getFriends(id, afterId, limit, withFriendIds);
         return ResponseEntity.ok(friends);
     }
 
     // поиск общих друзей
     @GetMapping("/{id}/friends/common/{otherId}")
-    public ResponseEntity<List<User>> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
+    public ResponseEntity<List<User>> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId,
+                                                       @RequestParam(required = false) Long afterId,
+                                                       @RequestParam(required = false) Integer limit,
+                                                       @RequestParam(defaultValue = "false") boolean withFriendIds) {
         log.info("Поиск общих друзей между пользователями с id = {} и id = {}", id, otherId);
-        List<User> commonFriends = new ArrayList<>(userService.getCommonFriends(id, otherId));
+        List<User> commonFriends = userService.getCommonFriends(id, otherId, afterId, limit, withFriendIds);
         return ResponseEntity.ok(commonFriends);
     }
 
+    // "возможно, вы знакомы": друзья друзей по убыванию числа общих друзей
+    @GetMapping("/{id}/friends/suggestions")
+    public ResponseEntity<List<User>> getFriendSuggestions(@PathVariable Long id,
+                                                           @RequestParam(required = false) Integer limit,
+                                                           @RequestParam(defaultValue = "false") boolean withFriendIds) {
+        log.info("Получение рекомендаций друзей для пользователя с id: {}", id);
+        return ResponseEntity.ok(userService.getFriendSuggestions(id, limit, withFriendIds));
+    }
+
+    // рекомендации фильмов по лайкам пользователей с похожими вкусами
+    @GetMapping("/{id}/recommendations")
+    public ResponseEntity<List<Film>> getRecommendations(@PathVariable Long id,
+                                                         @RequestParam(required = false) Integer limit) {
+        log.info("Получение рекомендаций фильмов для пользователя с id: {}", id);
+        return ResponseEntity.ok(recommendationService.getRecommendations(id, limit));
+    }
+
 }
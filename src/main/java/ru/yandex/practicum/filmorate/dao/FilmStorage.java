@@ -1,20 +1,58 @@
 package ru.yandex.practicum.filmorate.dao;
 
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Collection<Film> findAll();
 
+    // страница фильмов с id больше afterId в порядке возрастания id
+    List<Film> findPage(long afterId, int limit);
+
+    // последовательная выдача всех фильмов без накопления в памяти
+    void streamAll(Consumer<Film> consumer);
+
     Film create(final Film film);
 
+    // пакетная вставка уже проверенных фильмов, id проставляются в переданные объекты
+    List<Film> createAll(List<Film> films);
+
     Film update(final Film film);
 
     boolean delete(Long filmId);
 
     Optional<Film> getFilmById(Long id);
 
+    // есть ли фильм, без загрузки жанров и рейтинга
+    boolean exists(Long id);
+
+    // версия фильма для ETag без загрузки жанров и рейтинга; пусто, если фильма нет
+    Optional<Long> findVersion(Long id);
+
+    // фильмы по списку id в порядке списка, отсутствующие id пропускаются
+    List<Film> findByIds(List<Long> ids);
+
+    boolean addLike(Long filmId, Long userId);
+
+    boolean removeLike(Long filmId, Long userId);
+
+    List<Film> getTopFilms(int count);
+
+    // топ фильмов жанра genreId и года выпуска year, null - без отбора по признаку
+    List<Film> getTopFilms(int count, Long genreId, Integer year);
+
+    // поиск по началам слов в названии и/или описании, по убыванию лайков
+    List<Film> search(String query, Set<FilmSearchIndex.Field> fields, int limit);
+
+    // все лайки по фильмам в порядке возрастания id фильма: id фильма и отсортированные id пользователей
+    void streamLikes(BiConsumer<Long, long[]> consumer);
+
 }
@@ -11,10 +11,15 @@ public interface GenreDao {
 
     Optional<Genre> findById(Long id);
 
-    void addGenreToFilm(Long filmId, Long genreId);
+    // true, если связь фильма с жанром добавлена, false - если она уже была
+    boolean addGenreToFilm(Long filmId, Long genreId);
 
-    void removeGenreFromFilm(Long filmId, Long genreId);
+    // true, если связь фильма с жанром была и удалена
+    boolean removeGenreFromFilm(Long filmId, Long genreId);
 
     boolean existsById(Long id);
 
+    // сброс кэша справочника после изменения таблицы genre
+    void invalidateCache();
+
 }
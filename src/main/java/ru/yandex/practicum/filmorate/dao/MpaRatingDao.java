@@ -11,4 +11,9 @@ public interface MpaRatingDao {
 
     Optional<MpaRating> findById(Long id);
 
+    boolean existsById(Long id);
+
+    // сброс кэша справочника после изменения таблицы mpa
+    void invalidateCache();
+
 }
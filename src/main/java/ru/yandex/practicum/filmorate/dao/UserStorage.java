@@ -3,13 +3,21 @@ package ru.yandex.practicum.filmorate.dao;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     Collection<User> findAll();
 
+    // страница пользователей с id больше afterId в порядке возрастания id
+    List<User> findPage(long afterId, int limit);
+
+    // последовательная выдача всех пользователей без накопления в памяти
+    void streamAll(Consumer<User> consumer);
+
     User create(User user);
 
     User update(User user);
@@ -18,6 +26,12 @@ public interface UserStorage {
 
     Optional<User> getUserById(Long id);
 
+    // есть ли пользователь, без загрузки друзей
+    boolean exists(Long id);
+
+    // версия пользователя для ETag без загрузки друзей; пусто, если пользователя нет
+    Optional<Long> findVersion(Long id);
+
     void addFriend(Long userId, Long friendId);
 
     void removeFriend(Long userId, Long friendId);
@@ -26,4 +40,16 @@ public interface UserStorage {
 
     Set<Long> getCommonFriends(Long userId, Long otherUserId);
 
+    // друзья пользователя с id больше afterId, загруженные целиком, без их собственных friendIds
+    List<User> findFriends(Long userId, long afterId, int limit);
+
+    // общие друзья двух пользователей с id больше afterId, без их собственных friendIds
+    List<User> findCommonFriends(Long userId, Long otherUserId, long afterId, int limit);
+
+    // заполнение friendIds у переданных пользователей
+    void loadFriendIds(List<User> users);
+
+    // до limit рекомендованных друзей по убыванию числа общих друзей, без их собственных friendIds
+    List<User> findFriendSuggestions(Long userId, int limit);
+
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.dao.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Кэш небольшого справочника (рейтинги MPA, жанры), целиком загруженного в память.
+ * Справочник читается из базы при первом обращении и после invalidate(),
+ * все остальные обращения обслуживаются из памяти.
+ * hits - обращения, обслуженные из памяти, misses - обращения, потребовавшие загрузки из базы.
+ */
+public class DictionaryCache<T> {
+
+    private final Supplier<List<T>> loader;
+    private final Function<T, Long> idExtractor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // не synchronized: загрузка идёт в базу, а монитор закрепил бы виртуальный поток за несущим
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    private volatile Snapshot<T> snapshot;
+
+    public DictionaryCache(Supplier<List<T>> loader, Function<T, Long> idExtractor) {
+        this.loader = loader;
+        this.idExtractor = idExtractor;
+    }
+
+    public List<T> findAll() {
+        return snapshot().values();
+    }
+
+    public Optional<T> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshot().byId().get(id));
+    }
+
+    public boolean existsById(Long id) {
+        return findById(id).isPresent();
+    }
+
+    // сброс кэша: справочник будет перечитан из базы при следующем обращении
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private Snapshot<T> snapshot() {
+        Snapshot<T> current = snapshot;
+        if (current != null) {
+            hits.increment();
+            return current;
+        }
+        loadLock.lock();
+        try {
+            current = snapshot;
+            if (current == null) {
+                misses.increment();
+                List<T> values = List.copyOf(loader.get());
+                Map<Long, T> byId = new HashMap<>();
+                values.forEach(value -> byId.put(idExtractor.apply(value), value));
+                current = new Snapshot<>(values, Map.copyOf(byId));
+                snapshot = current;
+            } else {
+                hits.increment();
+            }
+            return current;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private record Snapshot<T>(List<T> values, Map<Long, T> byId) {
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.dao.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Кэш сущностей (фильмов, пользователей) по id перед таблицами хранилища.
+ * Объём ограничен приблизительным размером сущностей в байтах, вытеснение - W-TinyLFU (Caffeine):
+ * редко читаемые строки не вытесняют часто читаемые. Записи живут не дольше ttl.
+ * Хранилище сбрасывает запись в каждом изменяющем методе, внутри транзакции - ещё раз после её
+ * завершения, чтобы читатель между сбросом и фиксацией не вернул в кэш старую строку.
+ * Загрузка идёт вне блокировок кэша (compute держал бы монитор на время запроса к базе и закреплял
+ * виртуальный поток), поэтому загруженная строка кладётся в кэш, только если за время загрузки
+ * по её полосе не было сброса. Наружу отдаются копии, поэтому изменение полученного объекта не портит кэш.
+ * Метрики: cache.gets (hit/miss), cache.evictions, cache.size с тегом cache=name.
+ */
+public class EntityCache<T> {
+
+    private static final int STRIPES = 64;
+
+    private final Cache<Long, T> cache;
+    // счётчики сбросов по полосам id: загрузка сравнивает значение до и после записи в кэш
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+    private final UnaryOperator<T> copier;
+
+    public EntityCache(String name, DataSize maxSize, Duration ttl, ToIntFunction<T> weigher,
+                       UnaryOperator<T> copier, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Long id, T value) -> weigher.applyAsInt(value))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.copier = copier;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    // сущность из кэша или из loader; отсутствующие сущности не кэшируются
+    public Optional<T> get(long id, LongFunction<Optional<T>> loader) {
+        T cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(copier.apply(cached));
+        }
+        int stripe = stripe(id);
+        long stamp = invalidations.get(stripe);
+        Optional<T> loaded = loader.apply(id);
+        loaded.ifPresent(value -> {
+            cache.put(id, copier.apply(value));
+            // сброс во время загрузки: строка могла быть прочитана до изменения
+            if (invalidations.get(stripe) != stamp) {
+                cache.invalidate(id);
+            }
+        });
+        return loaded;
+    }
+
+    // есть ли сущность в кэше; отсутствие ничего не говорит о наличии в таблице
+    public boolean contains(long id) {
+        return cache.getIfPresent(id) != null;
+    }
+
+    public void invalidate(long id) {
+        evict(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(id);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    // счётчик увеличивается до удаления, чтобы идущая загрузка заметила сброс
+    private void evict(long id) {
+        invalidations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    private static int stripe(long id) {
+        return Long.hashCode(id) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.dao.dialect;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * H2 в обычном режиме: ON CONFLICT там не поддерживается, повтор отсекается условием NOT EXISTS.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.db.dialect", havingValue = "h2", matchIfMissing = true)
+public class H2Dialect implements SqlDialect {
+
+    @Override
+    public String insertIfAbsent(String table, List<String> columns, String condition) {
+        String absent = "NOT EXISTS (SELECT 1 FROM " + table + " t WHERE " +
+                String.join(" AND ", columns.stream().map(column -> "t." + column + " = v." + column).toList()) + ")";
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") " + SqlDialect.selectValues(columns) +
+                " WHERE " + (condition != null ? condition + " AND " : "") + absent;
+    }
+}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.dao.dialect;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * PostgreSQL: повтор отсекает уникальный индекс через ON CONFLICT DO NOTHING. В отличие от NOT EXISTS
+ * это работает и при одновременной вставке с нескольких узлов, которые не делят блокировки в памяти.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.db.dialect", havingValue = "postgres")
+public class PostgresDialect implements SqlDialect {
+
+    @Override
+    public String insertIfAbsent(String table, List<String> columns, String condition) {
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") " + SqlDialect.selectValues(columns) +
+                (condition != null ? " WHERE " + condition : "") + " ON CONFLICT DO NOTHING";
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.dao.dialect;
+
+import java.util.List;
+
+/**
+ * Запросы, которые по-разному записываются для H2 и PostgreSQL. Хранилища берут из диалекта текст запроса,
+ * а параметры передают одинаково для обоих вариантов. Диалект выбирается свойством filmorate.db.dialect.
+ */
+public interface SqlDialect {
+
+    /**
+     * Вставка строки, если строки с такими же значениями columns ещё нет (по уникальному индексу на columns).
+     * Параметры запроса - значения columns по порядку. В condition на них можно сослаться как на v.колонка,
+     * например "EXISTS (SELECT 1 FROM users WHERE id = v.user_id)"; null - без условия.
+     * Число изменённых строк - 1, если строка вставлена, иначе 0.
+     */
+    String insertIfAbsent(String table, List<String> columns, String condition);
+
+    // строки значений вида "SELECT v.a, v.b FROM (VALUES (?, ?)) v(a, b)" - общая часть обоих диалектов
+    static String selectValues(List<String> columns) {
+        String names = String.join(", ", columns);
+        String values = String.join(", ", columns.stream().map(column -> "?").toList());
+        String selected = String.join(", ", columns.stream().map(column -> "v." + column).toList());
+        return "SELECT " + selected + " FROM (VALUES (" + values + ")) v(" + names + ")";
+    }
+}
@@ -1,46 +1,204 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.MpaRatingDao;
+import ru.yandex.practicum.filmorate.dao.cache.EntityCache;
+import ru.yandex.practicum.filmorate.dao.dialect.SqlDialect;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikesIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.PopularFilmsIndex;
 import ru.yandex.practicum.filmorate.exception.GenreNotFoundException;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.MpaNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenreChangedEvent;
+import ru.yandex.practicum.filmorate.model.FilmLikeChangedEvent;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.UserDeletedEvent;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository
+@Timed("filmorate.dao")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+// лайки и рейтинг прогреваются из базы, поэтому миграции должны быть уже применены
+@DependsOn("schemaMigrations")
 @Qualifier("FilmDbStorage")
 @Slf4j
 public class FilmDbStorage implements FilmStorage {
 
+    // максимальное число id фильмов в одном IN-списке при загрузке жанров
+    private static final int GENRES_BATCH_SIZE = 1000;
+    // размер порции строк, которую драйвер читает за раз при потоковой выдаче
+    private static final int STREAM_FETCH_SIZE = 500;
+    // рейтинг MPA и жанры подставляются из кэшей справочников, поэтому к mpa и genre запросы не обращаются
+    private static final String SELECT_FILMS =
+            "SELECT f.id, f.name, f.description, f.release_date, f.duration, f.mpa_id, f.version FROM films f ";
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final MpaRatingDao mpaRatingDao;
+    private final GenreDao genreDao;
+    private final TransactionTemplate transactionTemplate;
+    private final RelationWriteBehind writeBehind;
+    private final ApplicationEventPublisher eventPublisher;
+    // вставки лайка и жанра фильма без повторов, текст зависит от диалекта базы
+    private final String insertLikeSql;
+    private final String insertGenreSql;
+    private final PopularFilmsIndex popularFilms = new PopularFilmsIndex();
+    private final FilmLikesIndex likes = new FilmLikesIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    // фильмы с жанрами по id; сбрасывается при изменении фильма и его жанров, лайки в фильм не входят
+    private final EntityCache<Film> cache;
 
     @Autowired
-    public FilmDbStorage(final JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(final JdbcTemplate jdbcTemplate, MpaRatingDao mpaRatingDao, GenreDao genreDao,
+                         TransactionTemplate transactionTemplate, RelationWriteBehind writeBehind,
+                         SqlDialect dialect, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+                         @Value("${filmorate.cache.films.max-size:32MB}") DataSize cacheSize,
+                         @Value("${filmorate.cache.ttl:10m}") Duration cacheTtl) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.mpaRatingDao = mpaRatingDao;
+        this.genreDao = genreDao;
+        this.transactionTemplate = transactionTemplate;
+        this.writeBehind = writeBehind;
+        this.eventPublisher = eventPublisher;
+        this.insertLikeSql = dialect.insertIfAbsent("film_likes", List.of("film_id", "user_id"), null);
+        this.insertGenreSql = dialect.insertIfAbsent("film_genre", List.of("film_id", "genre_id"), null);
+        this.cache = new EntityCache<>("films", cacheSize, cacheTtl, FilmDbStorage::weigh, FilmDbStorage::copy,
+                meterRegistry);
+    }
+
+    // прогрев рейтинга популярных фильмов из films.likes_count, года выпуска и film_genre
+    @PostConstruct
+    public void loadPopularFilms() {
+        popularFilms.clear();
+        Map<Long, List<Long>> genresByFilm = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, genre_id FROM film_genre", rs -> {
+            genresByFilm.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getLong("genre_id"));
+        });
+        jdbcTemplate.query("SELECT id, likes_count, release_date FROM films", rs -> {
+            long id = rs.getLong("id");
+            LocalDate releaseDate = rs.getObject("release_date", LocalDate.class);
+            popularFilms.update(id, rs.getLong("likes_count"));
+            popularFilms.describe(id, releaseDate != null ? releaseDate.getYear() : null,
+                    genresByFilm.getOrDefault(id, List.of()));
+        });
+        log.info("Рейтинг популярных фильмов загружен: {} фильмов", popularFilms.size());
+    }
+
+    // загрузка лайков из film_likes в индекс лайков
+    @PostConstruct
+    public void loadLikes() {
+        likes.clear();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("SELECT film_id, user_id FROM film_likes");
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            likes.likesOf(rs.getLong("film_id")).add(rs.getLong("user_id"));
+        });
+        log.info("Индекс лайков загружен");
+    }
+
+    // построение поискового индекса потоковым чтением названий и описаний
+    @PostConstruct
+    public void loadSearchIndex() {
+        searchIndex.load(sink -> jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, name, description FROM films ORDER BY id");
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            sink.accept(rs.getLong("id"), rs.getString("name"), rs.getString("description"));
+        }));
+        log.info("Поисковый индекс фильмов построен");
     }
 
     @Override
     public Collection<Film> findAll() {
-        String sql = "SELECT f.id, f.name, f.description, f.release_date, f.duration, m.id as mpa_id, m.name as mpa_name " +
-                "FROM films f LEFT JOIN mpa m ON f.mpa_id = m.id";
-        return jdbcTemplate.query(sql, this::filmRowMapper);
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS, this::filmRowMapper);
+        loadAllGenres(films);
+        return films;
     }
 
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        String sql = SELECT_FILMS + "WHERE f.id > ? ORDER BY f.id LIMIT ?";
+        List<Film> films = jdbcTemplate.query(sql, this::filmRowMapper, afterId, limit);
+        loadGenres(films);
+        return films;
+    }
+
+    // фильмы и их жанры читаются одним запросом, упорядоченным по id фильма;
+    // фильм отдаётся потребителю, как только в выборке начинается следующий
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        String sql = "SELECT f.id, f.name, f.description, f.release_date, f.duration, f.mpa_id, f.version, " +
+                "fg.genre_id " +
+                "FROM films f LEFT JOIN film_genre fg ON fg.film_id = f.id " +
+                "ORDER BY f.id, fg.genre_id";
+        AtomicReference<Film> current = new AtomicReference<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            long id = rs.getLong("id");
+            Film film = current.get();
+            if (film == null || film.getId() != id) {
+                if (film != null) {
+                    consumer.accept(film);
+                }
+                film = filmRowMapper(rs, 0);
+                current.set(film);
+            }
+            long genreId = rs.getLong("genre_id");
+            if (!rs.wasNull()) {
+                film.getGenreIds().add(getGenre(genreId));
+            }
+        });
+        if (current.get() != null) {
+            consumer.accept(current.get());
+        }
+    }
+
+    // Фильм, его жанры и чтение сохранённого состояния - одна транзакция, индексы в памяти
+    // меняются только после её фиксации
     @Override
     public Film create(Film film) {
         if (film.getMpaRatingId() != null && !mpaRatingExists(film.getMpaRatingId().getId())) {
@@ -49,29 +207,70 @@ public class FilmDbStorage implements FilmStorage {
         if (film.getGenreIds() != null && !genresExist(film.getGenreIds())) {
             throw new GenreNotFoundException("Жанр не найден");
         }
-        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?)";
-        jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, film.getName());
-            ps.setString(2, film.getDescription());
-            ps.setDate(3, java.sql.Date.valueOf(film.getReleaseDate()));
-            ps.setLong(4, film.getDuration());
-            if (film.getMpaRatingId() != null) {
-                ps.setLong(5, film.getMpaRatingId().getId());
-            } else {
-                ps.setNull(5, java.sql.Types.BIGINT);
+        Film created = transactionTemplate.execute(status -> {
+            GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+            String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?)";
+            jdbcTemplate.update(connection -> {
+                // ключ по имени столбца: PostgreSQL на RETURN_GENERATED_KEYS возвращает все столбцы строки
+                PreparedStatement ps = connection.prepareStatement(sql, new String[]{"id"});
+                ps.setString(1, film.getName());
+                ps.setString(2, film.getDescription());
+                ps.setDate(3, java.sql.Date.valueOf(film.getReleaseDate()));
+                ps.setLong(4, film.getDuration());
+                if (film.getMpaRatingId() != null) {
+                    ps.setLong(5, film.getMpaRatingId().getId());
+                } else {
+                    ps.setNull(5, java.sql.Types.BIGINT);
+                }
+                return ps;
+            }, keyHolder);
+            if (keyHolder.getKey() == null) {
+                throw new InternalServerException("Не удалось сохранить данные");
             }
-            return ps;
-        }, keyHolder);
-
-        if (keyHolder.getKey() != null) {
             film.setId(keyHolder.getKey().longValue());
             saveGenres(film);
-            return getFilmById(film.getId()).orElseThrow(() -> new InternalServerException("Не удалось получить данные фильма после вставки"));
-        } else {
-            throw new InternalServerException("Не удалось сохранить данные");
+            // чтение мимо кэша: до фиксации строка в кэш не попадает
+            return loadFilm(film.getId())
+                    .orElseThrow(() -> new InternalServerException("Не удалось получить данные фильма после вставки"));
+        });
+        describePopularity(created);
+        searchIndex.put(created.getId(), created.getName(), created.getDescription());
+        return created;
+    }
+
+    // пакетная вставка фильмов и их жанров: по одному batch-запросу на films и film_genre;
+    // индексы в памяти обновляются только после фиксации транзакции
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
         }
+        String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) " +
+                "VALUES (:name, :description, :releaseDate, :duration, :mpaId)";
+        SqlParameterSource[] batchArgs = films.stream()
+                .map(film -> new MapSqlParameterSource()
+                        .addValue("name", film.getName())
+                        .addValue("description", film.getDescription())
+                        .addValue("releaseDate", film.getReleaseDate())
+                        .addValue("duration", film.getDuration())
+                        .addValue("mpaId", film.getMpaRatingId() != null ? film.getMpaRatingId().getId() : null))
+                .toArray(SqlParameterSource[]::new);
+        transactionTemplate.executeWithoutResult(status -> {
+            GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+            namedParameterJdbcTemplate.batchUpdate(sql, batchArgs, keyHolder, new String[]{"id"});
+
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            if (keys.size() != films.size()) {
+                throw new InternalServerException("Не удалось получить id фильмов после пакетной вставки");
+            }
+            for (int i = 0; i < films.size(); i++) {
+                films.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            }
+            insertGenres(films);
+        });
+        films.forEach(this::describePopularity);
+        films.forEach(film -> searchIndex.put(film.getId(), film.getName(), film.getDescription()));
+        return films;
     }
 
     private void saveGenres(Film film) {
@@ -82,106 +281,405 @@ public class FilmDbStorage implements FilmStorage {
         String sqlDelete = "DELETE FROM film_genre WHERE film_id = ?";
         jdbcTemplate.update(sqlDelete, film.getId());
 
-        String sqlInsert = "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)";
-        for (Genre genre : film.getGenreIds()) {
-            System.out.println("film.getId()=" + film.getId() + "genre.getId()=" + genre.getId());
-            jdbcTemplate.update(sqlInsert, film.getId(), genre.getId());
+        insertGenres(List.of(film));
+    }
+
+    // вставка связей фильм-жанр одним batch-запросом
+    private void insertGenres(List<Film> films) {
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenreIds() == null) {
+                continue;
+            }
+            // пара (film_id, genre_id) уникальна, повторы одного жанра во входных данных пропускаются
+            Set<Long> genreIds = new LinkedHashSet<>();
+            film.getGenreIds().forEach(genre -> genreIds.add(genre.getId()));
+            for (Long genreId : genreIds) {
+                batchArgs.add(new Object[]{film.getId(), genreId});
+            }
+        }
+        if (!batchArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", batchArgs);
         }
     }
 
+    // Обновление фильма одной транзакцией: существование определяется по числу изменённых строк,
+    // жанры пишутся разницей с текущими (genres = null - жанры не меняются). Возвращается сохранённое
+    // состояние: рейтинг и жанры из справочников, жанры по возрастанию id, новая версия строки
     @Override
     public Film update(Film film) {
-        if (!doesFilmExist(film.getId())) {
-            throw new ResourceNotFoundException("Фильм с id " + film.getId() + " не существует");
+        if (film.getId() == null) {
+            throw new ValidationException("Не задан id фильма");
         }
-        String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ? WHERE id = ?";
-        jdbcTemplate.update(sql, film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
-                film.getMpaRatingId() != null ? film.getMpaRatingId().getId() : null, film.getId());
-        return film;
+        MpaRating mpaRating = resolveMpaRating(film.getMpaRatingId());
+        Set<Genre> genres = film.getGenreIds() != null ? resolveGenres(film.getGenreIds()) : null;
+        Film updated = transactionTemplate.execute(status -> {
+            String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ?, " +
+                    "version = version + 1 WHERE id = ?";
+            GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+            int rows = jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql, new String[]{"version"});
+                ps.setString(1, film.getName());
+                ps.setString(2, film.getDescription());
+                ps.setObject(3, film.getReleaseDate());
+                ps.setLong(4, film.getDuration());
+                ps.setObject(5, mpaRating != null ? mpaRating.getId() : null, java.sql.Types.BIGINT);
+                ps.setLong(6, film.getId());
+                return ps;
+            }, keyHolder);
+            if (rows == 0) {
+                throw new ResourceNotFoundException("Фильм с id " + film.getId() + " не существует");
+            }
+            List<Long> current = jdbcTemplate.queryForList(
+                    "SELECT genre_id FROM film_genre WHERE film_id = ? ORDER BY genre_id", Long.class, film.getId());
+            Set<Genre> persistedGenres = genres != null ? genres : resolveGenreIds(current);
+            if (genres != null) {
+                writeGenreDiff(film.getId(), current, genres);
+            }
+            Film result = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                    (int) film.getDuration(), mpaRating, persistedGenres);
+            result.setVersion(keyHolder.getKey().longValue());
+            return result;
+        });
+        // кэш и индексы в памяти меняются только после фиксации транзакции
+        cache.invalidate(updated.getId());
+        describePopularity(updated);
+        searchIndex.put(updated.getId(), updated.getName(), updated.getDescription());
+        return updated;
+    }
+
+    // вставка и удаление только изменившихся связей фильм-жанр, каждое - одним batch-запросом
+    private void writeGenreDiff(long filmId, List<Long> current, Set<Genre> genres) {
+        Set<Long> target = new LinkedHashSet<>();
+        genres.forEach(genre -> target.add(genre.getId()));
+        List<Object[]> removed = current.stream()
+                .filter(genreId -> !target.contains(genreId))
+                .map(genreId -> new Object[]{filmId, genreId})
+                .toList();
+        List<Object[]> added = target.stream()
+                .filter(genreId -> !current.contains(genreId))
+                .map(genreId -> new Object[]{filmId, genreId})
+                .toList();
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM film_genre WHERE film_id = ? AND genre_id = ?", removed);
+        }
+        // жанр мог быть добавлен параллельно через /films/{id}/genres, повтор пропускается
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertGenreSql, added);
+        }
+    }
+
+    private MpaRating resolveMpaRating(MpaRating mpaRating) {
+        if (mpaRating == null) {
+            return null;
+        }
+        return mpaRatingDao.findById(mpaRating.getId())
+                .orElseThrow(() -> new MpaNotFoundException("MPA rating не найден"));
+    }
+
+    // жанры из справочника без повторов, по возрастанию id - в том же порядке, в каком их читает loadGenres
+    private Set<Genre> resolveGenres(Set<Genre> genres) {
+        return genres.stream()
+                .map(Genre::getId)
+                .sorted()
+                .distinct()
+                .map(genreId -> genreDao.findById(genreId)
+                        .orElseThrow(() -> new GenreNotFoundException("Жанр не найден")))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<Genre> resolveGenreIds(List<Long> genreIds) {
+        return genreIds.stream()
+                .map(this::getGenre)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @Override
     public boolean delete(Long id) {
+        // отложенные лайки фильма записываются до каскадного удаления
+        writeBehind.flush();
         String sql = "DELETE FROM films WHERE id = ?";
-        return jdbcTemplate.update(sql, id) > 0;
+        boolean deleted = jdbcTemplate.update(sql, id) > 0;
+        if (deleted) {
+            cache.invalidate(id);
+            popularFilms.remove(id);
+            likes.removeFilm(id);
+            searchIndex.remove(id);
+        }
+        return deleted;
     }
 
     @Override
     public Optional<Film> getFilmById(Long id) {
-        String sql = "SELECT f.id, f.name, f.description, f.release_date, f.duration, m.id as mpa_id, m.name as mpa_name " +
-                "FROM films f JOIN mpa m ON f.mpa_id = m.id WHERE f.id = ?";
+        return cache.get(id, this::loadFilm);
+    }
+
+    // проверка существования без чтения жанров: по кэшу, иначе по первичному ключу
+    @Override
+    public boolean exists(Long id) {
+        return cache.contains(id) || Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM films WHERE id = ?)", Boolean.class, id));
+    }
+
+    private Optional<Film> loadFilm(long id) {
+        String sql = SELECT_FILMS + "WHERE f.id = ?";
         List<Film> films = jdbcTemplate.query(sql, this::filmRowMapper, id);
+        loadGenres(films);
         return films.stream().findFirst();
     }
 
-    public void addLike(Long filmId, Long userId) {
-        String sql = "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
-        jdbcTemplate.update(sql, filmId, userId);
+    @Override
+    public Optional<Long> findVersion(Long id) {
+        return jdbcTemplate.queryForList("SELECT version FROM films WHERE id = ?", Long.class, id).stream()
+                .findFirst();
+    }
+
+    // Добавление лайка фильму. Изменения лайков одного фильма сериализуются на его блокировке
+    // в индексе лайков, транзакция с film_likes и films.likes_count фиксируется под той же блокировкой,
+    // поэтому индекс в памяти и таблицы не расходятся при параллельных запросах. Событие о лайке
+    // публикуется под той же блокировкой, чтобы индекс рекомендаций видел изменения фильма в том же порядке.
+    // При отложенной записи под блокировкой меняется только память, а изменение уходит в буфер
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        Set<Long> filmLikes = likes.likesOf(filmId);
+        Lock lock = likes.lockOf(filmId);
+        lock.lock();
+        try {
+            if (filmLikes.contains(userId)) {
+                return false;
+            }
+            if (writeBehind.isEnabled()) {
+                filmLikes.add(userId);
+                popularFilms.update(filmId, filmLikes.size());
+                writeBehind.likeChanged(filmId, userId, true);
+                eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, true));
+                return true;
+            }
+            Boolean inserted = transactionTemplate.execute(status -> {
+                if (jdbcTemplate.update(insertLikeSql, filmId, userId) == 0) {
+                    return false;
+                }
+                jdbcTemplate.update("UPDATE films SET likes_count = likes_count + 1 WHERE id = ?", filmId);
+                return true;
+            });
+            filmLikes.add(userId);
+            popularFilms.update(filmId, filmLikes.size());
+            eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, true));
+            return Boolean.TRUE.equals(inserted);
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Удаление лайка у фильма
-    public void removeLike(Long filmId, Long userId) {
-        String sql = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
-        jdbcTemplate.update(sql, filmId, userId);
+    @Override
+    public boolean removeLike(Long filmId, Long userId) {
+        Set<Long> filmLikes = likes.likesOf(filmId);
+        Lock lock = likes.lockOf(filmId);
+        lock.lock();
+        try {
+            if (writeBehind.isEnabled()) {
+                if (!filmLikes.remove(userId)) {
+                    return false;
+                }
+                popularFilms.update(filmId, filmLikes.size());
+                writeBehind.likeChanged(filmId, userId, false);
+                eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, false));
+                return true;
+            }
+            Boolean deleted = transactionTemplate.execute(status -> {
+                String sql = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
+                int rows = jdbcTemplate.update(sql, filmId, userId);
+                if (rows == 0) {
+                    return false;
+                }
+                jdbcTemplate.update("UPDATE films SET likes_count = likes_count - ? WHERE id = ?", rows, filmId);
+                return true;
+            });
+            filmLikes.remove(userId);
+            popularFilms.update(filmId, filmLikes.size());
+            eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, false));
+            return Boolean.TRUE.equals(deleted);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    // Получение списка топ-фильмов по количеству лайков
+    // лайки удалённого пользователя удалены каскадом в базе, здесь поправляется память
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        for (Long filmId : likes.removeUser(event.userId())) {
+            popularFilms.update(filmId, likes.count(filmId));
+        }
+    }
+
+    // Получение списка топ-фильмов по количеству лайков из рейтинга в памяти
+    @Override
     public List<Film> getTopFilms(int limit) {
-        String sql = """
-                SELECT f.*, COUNT(l.user_id) as likes_count
-                FROM films f
-                LEFT JOIN film_likes l ON f.id = l.film_id
-                GROUP BY f.id
-                ORDER BY likes_count DESC
-                LIMIT ?
-                """;
-        return jdbcTemplate.query(sql, this::filmRowMapper, limit);
+        return findByIds(popularFilms.top(limit));
     }
 
-    private boolean doesFilmExist(Long filmId) {
-        String sql = "SELECT EXISTS (SELECT 1 FROM films WHERE id = ?)";
-        return jdbcTemplate.queryForObject(sql, Boolean.class, filmId);
+    @Override
+    public List<Film> getTopFilms(int limit, Long genreId, Integer year) {
+        return findByIds(popularFilms.top(limit, genreId, year));
     }
 
+    // поиск по индексу в памяти, фильмы читаются одним запросом по найденным id
+    @Override
+    public List<Film> search(String query, Set<FilmSearchIndex.Field> fields, int limit) {
+        return findByIds(searchIndex.search(query, fields, limit, popularFilms::getLikes));
+    }
 
-    private boolean mpaRatingExists(Long mpaId) {
-        String sql = "SELECT EXISTS (SELECT 1 FROM mpa WHERE id = ?)";
-        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, new Object[]{mpaId}, Boolean.class));
+    // связь уже изменена в film_genre; версия растёт после изменения, поэтому ETag не опережает данные
+    @EventListener
+    public void onFilmGenreChanged(FilmGenreChangedEvent event) {
+        jdbcTemplate.update("UPDATE films SET version = version + 1 WHERE id = ?", event.filmId());
+        cache.invalidate(event.filmId());
+        if (event.added()) {
+            popularFilms.addGenre(event.filmId(), event.genreId());
+        } else {
+            popularFilms.removeGenre(event.filmId(), event.genreId());
+        }
     }
 
-    private boolean genresExist(Set<Genre> genres) {
-        String sql = "SELECT EXISTS (SELECT 1 FROM genre WHERE id = ?)";
-        for (Genre genre : genres) {
-            Boolean exists = jdbcTemplate.queryForObject(sql, new Object[]{genre.getId()}, Boolean.class);
-            if (Boolean.FALSE.equals(exists)) {
-                return false;
+    // год выпуска и жанры фильма для рейтингов по году и жанру
+    private void describePopularity(Film film) {
+        popularFilms.describe(film.getId(), film.getReleaseDate() != null ? film.getReleaseDate().getYear() : null,
+                film.getGenreIds() != null ? film.getGenreIds().stream().map(Genre::getId).toList() : List.of());
+    }
+
+    // лайки читаются потоком, упорядоченным по фильму и пользователю,
+    // массив пользователей фильма отдаётся, как только в выборке начинается следующий фильм
+    @Override
+    public void streamLikes(BiConsumer<Long, long[]> consumer) {
+        writeBehind.flush();
+        long[][] buffer = {new long[16]};
+        int[] size = {0};
+        long[] filmId = {-1};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT film_id, user_id FROM film_likes ORDER BY film_id, user_id");
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            long current = rs.getLong("film_id");
+            if (current != filmId[0]) {
+                if (size[0] > 0) {
+                    consumer.accept(filmId[0], Arrays.copyOf(buffer[0], size[0]));
+                }
+                filmId[0] = current;
+                size[0] = 0;
+            }
+            if (size[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
             }
+            buffer[0][size[0]++] = rs.getLong("user_id");
+        });
+        if (size[0] > 0) {
+            consumer.accept(filmId[0], Arrays.copyOf(buffer[0], size[0]));
         }
-        return true;
+    }
+
+    // загрузка фильмов по списку id с сохранением порядка списка
+    @Override
+    public List<Film> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String sql = SELECT_FILMS + "WHERE f.id IN (:ids)";
+        Map<Long, Film> filmsById = new HashMap<>();
+        namedParameterJdbcTemplate.query(sql, Map.of("ids", ids), this::filmRowMapper)
+                .forEach(film -> filmsById.put(film.getId(), film));
+        List<Film> films = ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+        loadGenres(films);
+        return films;
+    }
+
+    private boolean mpaRatingExists(Long mpaId) {
+        return mpaRatingDao.existsById(mpaId);
+    }
+
+    private boolean genresExist(Set<Genre> genres) {
+        return genres.stream().allMatch(genre -> genreDao.existsById(genre.getId()));
+    }
+
+    // оценка размера фильма в кэше в байтах: объект с полями, строки по 2 байта на символ, жанры
+    private static int weigh(Film film) {
+        int chars = (film.getName() != null ? film.getName().length() : 0)
+                + (film.getDescription() != null ? film.getDescription().length() : 0);
+        return 160 + 2 * chars + 48 * (film.getGenreIds() != null ? film.getGenreIds().size() : 0);
+    }
+
+    private static Film copy(Film film) {
+        Film copy = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                (int) film.getDuration(), film.getMpaRatingId(),
+                film.getGenreIds() != null ? new LinkedHashSet<>(film.getGenreIds()) : null);
+        copy.setVersion(film.getVersion());
+        return copy;
     }
 
     private Film filmRowMapper(ResultSet rs, int rowNum) throws SQLException {
         Long id = rs.getLong("id");
         String name = rs.getString("name");
         String description = rs.getString("description");
-        LocalDate releaseDate = rs.getDate("release_date").toLocalDate();
+        LocalDate releaseDate = rs.getObject("release_date", LocalDate.class);
         int duration = rs.getInt("duration");
-        Long mpaId = rs.getLong("mpa_id");
-        String mpaName = rs.getString("mpa_name");
+        long mpaId = rs.getLong("mpa_id");
+        MpaRating mpaRating = rs.wasNull() ? null : mpaRatingDao.findById(mpaId)
+                .orElseGet(() -> new MpaRating(mpaId, null));
 
-        MpaRating mpaRating = new MpaRating(mpaId, mpaName);
+        // жанры заполняются отдельно одним запросом на всю выборку, см. loadGenres
+        Film film = new Film(id, name, description, releaseDate, duration, mpaRating, new LinkedHashSet<>());
+        film.setVersion(rs.getLong("version"));
+        return film;
+    }
 
-        List<Genre> genres = getGenresForFilm(id);
-        return new Film(id, name, description, releaseDate, duration, mpaRating, new LinkedHashSet<>(genres));
+    // загрузка жанров для списка фильмов: один запрос на каждые GENRES_BATCH_SIZE фильмов
+    private void loadGenres(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        films.forEach(film -> filmsById.put(film.getId(), film));
+        List<Long> ids = new ArrayList<>(filmsById.keySet());
+
+        String sql = "SELECT film_id, genre_id FROM film_genre " +
+                "WHERE film_id IN (:ids) " +
+                "ORDER BY film_id, genre_id";
+        for (int from = 0; from < ids.size(); from += GENRES_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + GENRES_BATCH_SIZE, ids.size()));
+            namedParameterJdbcTemplate.query(sql, Map.of("ids", batch), rs -> {
+                addGenreToFilm(filmsById, rs);
+            });
+        }
+    }
+
+    // загрузка жанров для всех фильмов таблицы одним запросом без IN-списка
+    private void loadAllGenres(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        films.forEach(film -> filmsById.put(film.getId(), film));
+
+        String sql = "SELECT film_id, genre_id FROM film_genre ORDER BY film_id, genre_id";
+        jdbcTemplate.query(sql, rs -> {
+            addGenreToFilm(filmsById, rs);
+        });
+    }
+
+    private void addGenreToFilm(Map<Long, Film> filmsById, ResultSet rs) throws SQLException {
+        Film film = filmsById.get(rs.getLong("film_id"));
+        if (film != null) {
+            film.getGenreIds().add(getGenre(rs.getLong("genre_id")));
+        }
     }
 
-    private List<Genre> getGenresForFilm(Long filmId) {
-        String sql = "SELECT g.id, g.name FROM film_genre fg " +
-                "JOIN genre g ON fg.genre_id = g.id " +
-                "WHERE fg.film_id = ? " +
-                "ORDER BY g.id";
-        return jdbcTemplate.query(sql, new Object[]{filmId}, (rs, rowNum) ->
-                new Genre(rs.getLong("id"), rs.getString("name")));
+    private Genre getGenre(long genreId) {
+        return genreDao.findById(genreId).orElseGet(() -> new Genre(genreId, null));
     }
 
 }
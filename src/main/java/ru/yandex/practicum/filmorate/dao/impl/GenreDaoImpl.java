@@ -1,10 +1,16 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.cache.DictionaryCache;
+import ru.yandex.practicum.filmorate.dao.dialect.SqlDialect;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 
@@ -14,49 +20,71 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Timed("filmorate.dao")
 public class GenreDaoImpl implements GenreDao {
 
     private final JdbcTemplate jdbcTemplate;
+    private final String insertFilmGenreSql;
+
+    // таблица genre почти не меняется, поэтому чтения обслуживаются из памяти
+    private final DictionaryCache<Genre> cache;
 
     @Autowired
-    public GenreDaoImpl(JdbcTemplate jdbcTemplate) {
+    public GenreDaoImpl(JdbcTemplate jdbcTemplate, SqlDialect dialect, MeterRegistry meterRegistry) {
         this.jdbcTemplate = jdbcTemplate;
+        this.insertFilmGenreSql = dialect.insertIfAbsent("film_genre", List.of("film_id", "genre_id"), null);
+        this.cache = new DictionaryCache<>(this::loadAll, Genre::getId);
+        FunctionCounter.builder("dictionary.cache.hits", cache, DictionaryCache::hits)
+                .tag("dictionary", "genre")
+                .register(meterRegistry);
+        FunctionCounter.builder("dictionary.cache.misses", cache, DictionaryCache::misses)
+                .tag("dictionary", "genre")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        cache.findAll();
     }
 
     @Override
     public List<Genre> findAll() {
-        String sql = "SELECT * FROM genre order by id asc";
-        return jdbcTemplate.query(sql, new GenreRowMapper());
+        return cache.findAll();
     }
 
     @Override
     public Optional<Genre> findById(Long id) {
-        String sql = "SELECT * FROM genre WHERE id = ?";
-        try {
-            Genre genre = jdbcTemplate.queryForObject(sql, new GenreRowMapper(), id);
-            return Optional.ofNullable(genre);
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+        return cache.findById(id);
     }
 
-    public void addGenreToFilm(Long filmId, Long genreId) {
+    @Override
+    public boolean addGenreToFilm(Long filmId, Long genreId) {
         if (!existsById(genreId) /*&& genreId != null*/) {
             throw new NotFoundException("Жанр id=" + genreId + " фильма id=" + filmId + " не найден.");
         }
-        String sql = "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
-        jdbcTemplate.update(sql, filmId, genreId);
+        // пара (film_id, genre_id) уникальна, повторное добавление ничего не меняет
+        return jdbcTemplate.update(insertFilmGenreSql, filmId, genreId) > 0;
     }
 
-    public void removeGenreFromFilm(Long filmId, Long genreId) {
+    @Override
+    public boolean removeGenreFromFilm(Long filmId, Long genreId) {
         String sql = "DELETE FROM film_genre WHERE film_id = ? AND genre_id = ?";
-        jdbcTemplate.update(sql, filmId, genreId);
+        return jdbcTemplate.update(sql, filmId, genreId) > 0;
     }
 
     @Override
     public boolean existsById(Long id) {
-        String sql = "SELECT EXISTS (SELECT 1 FROM genre WHERE id = ?)";
-        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
+        return cache.existsById(id);
+    }
+
+    @Override
+    public void invalidateCache() {
+        cache.invalidate();
+    }
+
+    private List<Genre> loadAll() {
+        String sql = "SELECT * FROM genre order by id asc";
+        return jdbcTemplate.query(sql, new GenreRowMapper());
     }
 
     private static class GenreRowMapper implements RowMapper<Genre> {
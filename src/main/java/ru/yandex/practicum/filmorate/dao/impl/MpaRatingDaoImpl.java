@@ -1,10 +1,15 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.dao.MpaRatingDao;
+import ru.yandex.practicum.filmorate.dao.cache.DictionaryCache;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
 import java.sql.ResultSet;
@@ -13,35 +18,54 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Timed("filmorate.dao")
 public class MpaRatingDaoImpl implements MpaRatingDao {
 
     private final JdbcTemplate jdbcTemplate;
 
+    // таблица mpa почти не меняется, поэтому чтения обслуживаются из памяти
+    private final DictionaryCache<MpaRating> cache;
+
     @Autowired
-    public MpaRatingDaoImpl(JdbcTemplate jdbcTemplate) {
+    public MpaRatingDaoImpl(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
         this.jdbcTemplate = jdbcTemplate;
+        this.cache = new DictionaryCache<>(this::loadAll, MpaRating::getId);
+        FunctionCounter.builder("dictionary.cache.hits", cache, DictionaryCache::hits)
+                .tag("dictionary", "mpa")
+                .register(meterRegistry);
+        FunctionCounter.builder("dictionary.cache.misses", cache, DictionaryCache::misses)
+                .tag("dictionary", "mpa")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        cache.findAll();
     }
 
     @Override
     public List<MpaRating> findAll() {
-        String sql = "SELECT * FROM mpa order by id asc";
-        return jdbcTemplate.query(sql, new MpaRatingRowMapper());
+        return cache.findAll();
     }
 
     @Override
     public Optional<MpaRating> findById(Long id) {
-        String sql = "SELECT * FROM mpa WHERE id = ?";
-        try {
-            MpaRating mpaRating = jdbcTemplate.queryForObject(sql, new MpaRatingRowMapper(), id);
-            return Optional.ofNullable(mpaRating);
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+        return cache.findById(id);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return cache.existsById(id);
     }
 
-    private boolean existsMPAById(Long id) {
-        String sql = "SELECT EXISTS (SELECT 1 FROM mpa WHERE id = ?)";
-        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
+    @Override
+    public void invalidateCache() {
+        cache.invalidate();
+    }
+
+    private List<MpaRating> loadAll() {
+        String sql = "SELECT * FROM mpa order by id asc";
+        return jdbcTemplate.query(sql, new MpaRatingRowMapper());
     }
 
     private static class MpaRatingRowMapper implements RowMapper<MpaRating> {
@@ -0,0 +1,210 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.dialect.SqlDialect;
+import ru.yandex.practicum.filmorate.dao.writebehind.WriteBehindBuffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Отложенная запись лайков (film_likes) и дружбы (friendship), включается свойством
+ * filmorate.write-behind.enabled. Хранилища сразу меняют индексы в памяти - через них идут все чтения
+ * лайков и друзей - и кладут изменение в буфер; буфер пишется пачкой batchUpdate в одной транзакции
+ * каждые flush-interval-ms или сразу, как только накопилось batch-size изменений.
+ * Если накопилось capacity изменений, запись выполняет сам поток запроса (обратное давление).
+ * Перед удалением фильма или пользователя и при остановке приложения буферы записываются полностью.
+ * <p>
+ * Если запись пачки не удалась, индексы в памяти не откатываются: пачка возвращается в буфер и пишется
+ * при следующей записи, а до тех пор чтения видят изменение, как и при любой отложенной записи.
+ * Фоновая запись только логирует ошибку, а явный {@link #flush()} её пробрасывает, поэтому удаление
+ * фильма или пользователя при недоступной базе завершается ошибкой и ничего не удаляет.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+@Slf4j
+public class RelationWriteBehind {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // вставка пропускается, если фильм или пользователь удалён, пока изменение ждало в буфере
+    private final String insertLikeSql;
+    private final String insertFriendshipSql;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int capacity;
+    private final WriteBehindBuffer<Link> likes = new WriteBehindBuffer<>(this::writeLikes, Link::ownerId);
+    private final WriteBehindBuffer<Link> friendships =
+            new WriteBehindBuffer<>(this::writeFriendships, Link::ownerId);
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // вызывается для каждого пользователя, чья версия выросла при записи дружбы
+    private volatile LongConsumer friendshipsWritten = userId -> { };
+
+    public RelationWriteBehind(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, SqlDialect dialect,
+                               @Value("${filmorate.write-behind.enabled:false}") boolean enabled,
+                               @Value("${filmorate.write-behind.batch-size:500}") int batchSize,
+                               @Value("${filmorate.write-behind.capacity:10000}") int capacity,
+                               @Value("${filmorate.write-behind.flush-interval-ms:100}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        // своя транзакция: запись могут вызвать изнутри чужой, и её откат не должен терять уже снятую пачку
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.insertLikeSql = dialect.insertIfAbsent("film_likes", List.of("film_id", "user_id"),
+                "EXISTS (SELECT 1 FROM films WHERE id = v.film_id) AND EXISTS (SELECT 1 FROM users WHERE id = v.user_id)");
+        this.insertFriendshipSql = dialect.insertIfAbsent("friendship", List.of("user_id", "friend_id"),
+                "EXISTS (SELECT 1 FROM users WHERE id = v.user_id) AND EXISTS (SELECT 1 FROM users WHERE id = v.friend_id)");
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        if (enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("filmorate-write-behind").daemon().factory());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void onFriendshipsWritten(LongConsumer listener) {
+        this.friendshipsWritten = listener;
+    }
+
+    public void likeChanged(long filmId, long userId, boolean added) {
+        afterPut(likes, likes.put(new Link(filmId, userId), added));
+    }
+
+    public void friendshipChanged(long userId, long friendId, boolean added) {
+        afterPut(friendships, friendships.put(new Link(userId, friendId), added));
+    }
+
+    // есть ли у пользователя изменения дружбы, ещё не записанные в базу (его версия там ещё старая)
+    public boolean hasPendingFriendships(long userId) {
+        return friendships.hasPending(userId);
+    }
+
+    // полная запись обоих буферов; вызывается перед операциями, которые читают или каскадно удаляют связи
+    public void flush() {
+        if (enabled) {
+            likes.flush();
+            friendships.flush();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Не записаны при остановке: {} лайков, {} связей дружбы", likes.size(), friendships.size(), ex);
+        }
+    }
+
+    private void afterPut(WriteBehindBuffer<Link> buffer, int size) {
+        if (size >= capacity) {
+            buffer.flush();
+        } else if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Ошибка отложенной записи, изменения остались в буфере", ex);
+        }
+    }
+
+    // лайки и счётчики films.likes_count одной транзакцией; счётчик меняется на число строк,
+    // которые действительно вставлены или удалены
+    private void writeLikes(Map<Link, Boolean> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, Long> delta = new HashMap<>();
+            write(batch, insertLikeSql, "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?",
+                    (link, change) -> delta.merge(link.ownerId(), (long) change, Long::sum));
+            List<Object[]> counters = new ArrayList<>();
+            delta.forEach((filmId, change) -> {
+                if (change != 0) {
+                    counters.add(new Object[]{change, filmId});
+                }
+            });
+            if (!counters.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE films SET likes_count = likes_count + ? WHERE id = ?", counters);
+            }
+        });
+    }
+
+    // дружба и версии пользователей, у которых изменился список друзей
+    private void writeFriendships(Map<Link, Boolean> batch) {
+        Set<Long> changed = new LinkedHashSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            write(batch, insertFriendshipSql, "DELETE FROM friendship WHERE user_id = ? AND friend_id = ?",
+                    (link, change) -> changed.add(link.ownerId()));
+            List<Object[]> versions = changed.stream().map(userId -> new Object[]{userId}).toList();
+            if (!versions.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE users SET version = version + 1 WHERE id = ?", versions);
+            }
+        });
+        changed.forEach(userId -> friendshipsWritten.accept(userId));
+    }
+
+    // вставки и удаления пачки двумя batch-запросами; written получает каждую изменённую строку: +1 или -1
+    private void write(Map<Link, Boolean> batch, String insertSql, String deleteSql, LinkWritten written) {
+        List<Link> added = new ArrayList<>();
+        List<Link> removed = new ArrayList<>();
+        batch.forEach((link, add) -> (add ? added : removed).add(link));
+        int[] inserted = jdbcTemplate.batchUpdate(insertSql, added.stream()
+                .map(link -> new Object[]{link.ownerId(), link.otherId()})
+                .toList());
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] > 0) {
+                written.accept(added.get(i), 1);
+            }
+        }
+        int[] deleted = jdbcTemplate.batchUpdate(deleteSql, removed.stream()
+                .map(link -> new Object[]{link.ownerId(), link.otherId()})
+                .toList());
+        for (int i = 0; i < deleted.length; i++) {
+            if (deleted[i] > 0) {
+                written.accept(removed.get(i), -1);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface LinkWritten {
+        void accept(Link link, int change);
+    }
+
+    // связь владельца (фильма для лайка, пользователя для дружбы) с другим объектом
+    private record Link(long ownerId, long otherId) {
+    }
+}
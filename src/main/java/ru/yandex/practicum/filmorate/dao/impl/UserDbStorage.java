@@ -1,10 +1,24 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.cache.EntityCache;
+import ru.yandex.practicum.filmorate.dao.dialect.SqlDialect;
+import ru.yandex.practicum.filmorate.dao.index.FriendSuggestionIndex;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipIndex;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
@@ -12,17 +26,70 @@ import ru.yandex.practicum.filmorate.model.User;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository
+@Timed("filmorate.dao")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+@DependsOn("schemaMigrations")
+@Slf4j
 public class UserDbStorage implements UserStorage {
 
+    // размер порции строк, которую драйвер читает за раз при потоковой выдаче
+    private static final int STREAM_FETCH_SIZE = 500;
+    // максимальное число id в одном IN-списке при загрузке друзей
+    private static final int FRIENDS_BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // граф дружбы в памяти, повторяет таблицу friendship
+    private final FriendshipIndex friendships = new FriendshipIndex();
+    // изменения дружбы проходят через индекс рекомендаций, он же обновляет граф
+    private final FriendSuggestionIndex suggestions;
+    // строки users по id без friendIds: друзья берутся из графа при каждом чтении;
+    // запись сбрасывается при изменении пользователя и его версии (в том числе из-за друзей)
+    private final EntityCache<User> cache;
+    private final RelationWriteBehind writeBehind;
+    // вставка дружбы, только если оба пользователя есть и такой строки ещё нет
+    private final String insertFriendshipSql;
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         RelationWriteBehind writeBehind, SqlDialect dialect,
+                         @Value("${filmorate.users.suggestions.capacity:100}") int suggestionsCapacity,
+                         MeterRegistry meterRegistry,
+                         @Value("${filmorate.cache.users.max-size:16MB}") DataSize cacheSize,
+                         @Value("${filmorate.cache.ttl:10m}") Duration cacheTtl) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.writeBehind = writeBehind;
+        this.insertFriendshipSql = dialect.insertIfAbsent("friendship", List.of("user_id", "friend_id"),
+                "EXISTS (SELECT 1 FROM users WHERE id = v.user_id) AND EXISTS (SELECT 1 FROM users WHERE id = v.friend_id)");
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.suggestions = new FriendSuggestionIndex(friendships, suggestionsCapacity);
+        this.cache = new EntityCache<>("users", cacheSize, cacheTtl, UserDbStorage::weigh,
+                UserDbStorage::copy, meterRegistry);
+    }
+
+    // загрузка таблицы friendship в граф дружбы: строки идут подряд по каждому пользователю
+    // в порядке возрастания id, поэтому массивы собираются уже отсортированными
+    @PostConstruct
+    public void loadFriendships() {
+        friendships.clear();
+        loadAdjacency("SELECT user_id AS owner, friend_id AS other FROM friendship ORDER BY user_id, friend_id",
+                friendships::putFriends);
+        loadAdjacency("SELECT friend_id AS owner, user_id AS other FROM friendship ORDER BY friend_id, user_id",
+                friendships::putFollowers);
+        suggestions.clear();
+        // отложенная запись дружбы поднимает версии пользователей, их строки в кэше устаревают
+        writeBehind.onFriendshipsWritten(cache::invalidate);
+        log.info("Граф дружбы загружен");
     }
 
     @Override
@@ -31,12 +98,31 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sql, this::mapRowToUser);
     }
 
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        String sql = "SELECT * FROM USERS WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, this::mapRowToUser, afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        String sql = "SELECT * FROM USERS ORDER BY id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            consumer.accept(mapRowToUser(rs, 0));
+        });
+    }
+
     @Override
     public User create(User user) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         String sql = "INSERT INTO USERS (email, login, name, birthday) VALUES (?, ?, ?, ?)";
         jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            // ключ по имени столбца: PostgreSQL на RETURN_GENERATED_KEYS возвращает все столбцы строки
+            PreparedStatement ps = connection.prepareStatement(sql, new String[]{"id"});
             ps.setString(1, user.getEmail());
             ps.setString(2, user.getLogin());
             ps.setString(3, user.getName());
@@ -57,85 +143,287 @@ public class UserDbStorage implements UserStorage {
         if (user.getId() == null) {
             throw new IllegalArgumentException("У пользователя не задан id=" + user.getId());
         }
-        if (!existsById(user.getId())) {
+        int rows = jdbcTemplate.update("UPDATE USERS SET email = ?, login = ?, name = ?, birthday = ?, " +
+                        "version = version + 1 WHERE id = ?",
+                user.getEmail(), user.getLogin(), user.getName(), java.sql.Date.valueOf(user.getBirthday()), user.getId());
+        if (rows == 0) {
             throw new NotFoundException("Пользователь с id=" + user.getId() + " не найден.");
         }
-        jdbcTemplate.update("UPDATE USERS SET email = ?, login = ?, name = ?, birthday = ? WHERE id = ?",
-                user.getEmail(), user.getLogin(), user.getName(), java.sql.Date.valueOf(user.getBirthday()), user.getId());
+        cache.invalidate(user.getId());
         return user;
 
     }
 
     @Override
     public boolean delete(Long userId) {
-        if (!existsById(userId)) {
-            throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
+        // отложенные лайки и дружба записываются до каскадного удаления, иначе счётчики ниже их не учтут;
+        // запись идёт своей транзакцией, поэтому выполняется до транзакции удаления, а не внутри неё
+        writeBehind.flush();
+        transactionTemplate.executeWithoutResult(status -> {
+            // лайки пользователя удалятся каскадом, счётчики лайков фильмов уменьшаются заранее
+            jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1 " +
+                    "WHERE id IN (SELECT film_id FROM film_likes WHERE user_id = ?)", userId);
+            // у тех, кто дружил с пользователем, меняется список друзей
+            jdbcTemplate.update("UPDATE users SET version = version + 1 " +
+                    "WHERE id IN (SELECT user_id FROM friendship WHERE friend_id = ?)", userId);
+            // отсутствие пользователя видно по числу удалённых строк, отдельная проверка не нужна:
+            // запросы выше для такого id ничего не меняют
+            String sql = "DELETE FROM USERS WHERE id = ?";
+            if (jdbcTemplate.update(sql, userId) == 0) {
+                throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
+            }
+        });
+        // связи дружбы удалены каскадом в базе, здесь поправляется память
+        cache.invalidate(userId);
+        for (long followerId : friendships.followersOf(userId)) {
+            cache.invalidate(followerId);
         }
-        String sql = "DELETE FROM USERS WHERE id = ?";
-        return jdbcTemplate.update(sql, userId) > 0;
+        suggestions.removeUser(userId);
+        return true;
     }
 
     @Override
     public Optional<User> getUserById(Long id) {
-        String sql = "SELECT * FROM users WHERE id = ?";
-        User user = jdbcTemplate.queryForObject(sql, this::mapRowToUser, id);
-        if (user != null) {
-            user.setFriendIds(getFriends(id));
+        Optional<User> user = cache.get(id, this::loadUser);
+        user.ifPresent(found -> found.setFriendIds(toSet(friendships.friendsOf(id))));
+        return user;
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return existsById(id);
+    }
+
+    private Optional<User> loadUser(long id) {
+        return jdbcTemplate.query("SELECT * FROM users WHERE id = ?", this::mapRowToUser, id).stream().findFirst();
+    }
+
+    @Override
+    public Optional<Long> findVersion(Long id) {
+        // пока дружба пользователя не записана, версия в базе старая: ETag не выдаётся, чтобы не ответить 304
+        if (writeBehind.hasPendingFriendships(id)) {
+            return Optional.empty();
         }
-        return Optional.ofNullable(user);
+        return jdbcTemplate.queryForList("SELECT version FROM users WHERE id = ?", Long.class, id).stream()
+                .findFirst();
     }
 
+    // Один запрос на изменение: вставка проверяет существование обоих пользователей сама.
+    // Если строка не вставлена, причину определяет граф в памяти (он совпадает с таблицей под блокировкой
+    // пользователя): ребро уже есть - повторное добавление, иначе кого-то из пользователей нет
     @Override
     public void addFriend(Long userId, Long friendId) {
-        if (!existsById(userId)) {
-            throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
-        }
-        if (!existsById(friendId)) {
-            throw new NotFoundException("Пользователь с id=" + friendId + " не найден.");
+        Lock lock = friendships.lockOf(userId);
+        lock.lock();
+        try {
+            if (writeBehind.isEnabled()) {
+                // при отложенной записи запроса нет, существование проверяется заранее
+                requireUsers(userId, friendId);
+                if (suggestions.addFriend(userId, friendId)) {
+                    writeBehind.friendshipChanged(userId, friendId, true);
+                }
+            } else if (!changeFriendship(insertFriendshipSql, userId, friendId, true) && !isFriend(userId, friendId)) {
+                requireUsers(userId, friendId);
+            }
+        } finally {
+            lock.unlock();
         }
-        String sql = "INSERT INTO friendship (user_id, friend_id) VALUES (?, ?)";
-        jdbcTemplate.update(sql, userId, friendId);
     }
 
+    // удаление ничего не изменило: либо дружбы не было, либо нет кого-то из пользователей
     @Override
     public void removeFriend(Long userId, Long friendId) {
-        if (!existsById(userId)) {
-            throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
-        }
-        if (!existsById(friendId)) {
-            throw new NotFoundException("Пользователь с id=" + friendId + " не найден.");
-        }
         String sql = "DELETE FROM friendship WHERE user_id = ? AND friend_id = ?";
-        jdbcTemplate.update(sql, userId, friendId);
+        Lock lock = friendships.lockOf(userId);
+        lock.lock();
+        try {
+            if (writeBehind.isEnabled()) {
+                requireUsers(userId, friendId);
+                if (suggestions.removeFriend(userId, friendId)) {
+                    writeBehind.friendshipChanged(userId, friendId, false);
+                }
+            } else if (!changeFriendship(sql, userId, friendId, false)) {
+                requireUsers(userId, friendId);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public Set<Long> getFriends(Long userId) {
-        if (!existsById(userId)) {
-            throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
+        long[] ids = friendships.friendsOf(userId);
+        // у удалённого пользователя рёбер в графе нет, поэтому проверка нужна только для пустого списка
+        if (ids.length == 0) {
+            requireUsers(userId);
         }
-        String sql = "SELECT friend_id FROM friendship WHERE user_id = ?";
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, userId));
+        return toSet(ids);
     }
 
     @Override
     public Set<Long> getCommonFriends(Long userId, Long otherUserId) {
-        String sql = """
-                SELECT f1.friend_id
-                FROM friendship f1
-                JOIN friendship f2 ON f1.friend_id = f2.friend_id
-                WHERE f1.user_id = ? AND f2.user_id = ?
-                """;
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, userId, otherUserId));
+        return toSet(friendships.commonFriends(userId, otherUserId));
+    }
+
+    @Override
+    public List<User> findFriends(Long userId, long afterId, int limit) {
+        long[] ids = friendships.friendsOf(userId);
+        if (ids.length == 0) {
+            requireUsers(userId);
+        }
+        return findUsersByIds(ids, afterId, limit);
+    }
+
+    @Override
+    public List<User> findCommonFriends(Long userId, Long otherUserId, long afterId, int limit) {
+        return findUsersByIds(friendships.commonFriends(userId, otherUserId), afterId, limit);
     }
 
+    @Override
+    public void loadFriendIds(List<User> users) {
+        users.forEach(user -> user.setFriendIds(toSet(friendships.friendsOf(user.getId()))));
+    }
+
+    @Override
+    public List<User> findFriendSuggestions(Long userId, int limit) {
+        List<Long> ids = suggestions.suggestions(userId, limit);
+        if (ids.isEmpty()) {
+            requireUsers(userId);
+            return List.of();
+        }
+        // пользователи читаются одним запросом и расставляются в порядке рекомендаций
+        String sql = "SELECT * FROM users WHERE id IN (:ids)";
+        Map<Long, User> byId = namedParameterJdbcTemplate.query(sql, Map.of("ids", ids), this::mapRowToUser).stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // пользователи из отсортированного массива id с id больше afterId, не больше limit штук, по возрастанию id
+    private List<User> findUsersByIds(long[] sortedIds, long afterId, int limit) {
+        int from = Arrays.binarySearch(sortedIds, afterId);
+        from = from >= 0 ? from + 1 : -from - 1;
+        int to = (int) Math.min(sortedIds.length, (long) from + limit);
+        List<User> users = new ArrayList<>(to - from);
+        String sql = "SELECT * FROM users WHERE id IN (:ids) ORDER BY id";
+        for (int start = from; start < to; start += FRIENDS_BATCH_SIZE) {
+            List<Long> batch = Arrays.stream(sortedIds, start, Math.min(start + FRIENDS_BATCH_SIZE, to))
+                    .boxed()
+                    .toList();
+            users.addAll(namedParameterJdbcTemplate.query(sql, Map.of("ids", batch), this::mapRowToUser));
+        }
+        return users;
+    }
+
+    // потоковое чтение пар (owner, other), упорядоченных по owner и other, в массивы по каждому owner
+    private void loadAdjacency(String sql, BiConsumer<Long, long[]> sink) {
+        long[][] buffer = {new long[16]};
+        int[] size = {0};
+        long[] owner = {-1};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            long current = rs.getLong("owner");
+            if (current != owner[0]) {
+                if (size[0] > 0) {
+                    sink.accept(owner[0], Arrays.copyOf(buffer[0], size[0]));
+                }
+                owner[0] = current;
+                size[0] = 0;
+            }
+            if (size[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+            }
+            buffer[0][size[0]++] = rs.getLong("other");
+        });
+        if (size[0] > 0) {
+            sink.accept(owner[0], Arrays.copyOf(buffer[0], size[0]));
+        }
+    }
+
+    private static Set<Long> toSet(long[] ids) {
+        Set<Long> result = new LinkedHashSet<>(ids.length * 2);
+        for (long id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    // Строка friendship и версия пользователя меняются одной транзакцией. Граф в памяти меняется внутри неё
+    // перед версией, поэтому ETag не опережает список друзей, и возвращается обратно, если транзакция
+    // не зафиксирована. Возвращает false, если запрос не изменил ни одной строки
+    private boolean changeFriendship(String sql, Long userId, Long friendId, boolean added) {
+        boolean[] graphChanged = {false};
+        try {
+            Boolean changed = transactionTemplate.execute(status -> {
+                if (jdbcTemplate.update(sql, userId, friendId) == 0) {
+                    return false;
+                }
+                graphChanged[0] = added
+                        ? suggestions.addFriend(userId, friendId)
+                        : suggestions.removeFriend(userId, friendId);
+                jdbcTemplate.update("UPDATE users SET version = version + 1 WHERE id = ?", userId);
+                return true;
+            });
+            if (Boolean.TRUE.equals(changed)) {
+                cache.invalidate(userId);
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            if (graphChanged[0]) {
+                if (added) {
+                    suggestions.removeFriend(userId, friendId);
+                } else {
+                    suggestions.addFriend(userId, friendId);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private boolean isFriend(long userId, long friendId) {
+        return Arrays.binarySearch(friendships.friendsOf(userId), friendId) >= 0;
+    }
+
+    // NotFoundException для первого несуществующего из пользователей
+    private void requireUsers(Long... userIds) {
+        for (Long id : userIds) {
+            if (!existsById(id)) {
+                throw new NotFoundException("Пользователь с id=" + id + " не найден.");
+            }
+        }
+    }
+
+    // существование по кэшу, иначе по первичному ключу без чтения строки
     private boolean existsById(Long id) {
+        if (cache.contains(id)) {
+            return true;
+        }
         String sql = "SELECT EXISTS (SELECT 1 FROM users WHERE id = ?)";
         return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
     }
 
+    // оценка размера пользователя в кэше в байтах: объект с полями и строки по 2 байта на символ
+    private static int weigh(User user) {
+        int chars = (user.getEmail() != null ? user.getEmail().length() : 0)
+                + (user.getLogin() != null ? user.getLogin().length() : 0)
+                + (user.getName() != null ? user.getName().length() : 0);
+        return 150 + 2 * chars;
+    }
+
+    private static User copy(User user) {
+        User copy = new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), null);
+        copy.setVersion(user.getVersion());
+        return copy;
+    }
+
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
-        return new User(
+        User user = new User(
                 rs.getLong("id"),
                 rs.getString("email"),
                 rs.getString("login"),
@@ -143,5 +431,7 @@ public class UserDbStorage implements UserStorage {
                 rs.getDate("birthday").toLocalDate(),
                 null
         );
+        user.setVersion(rs.getLong("version"));
+        return user;
     }
 }
@@ -1,81 +1,302 @@
 package ru.yandex.practicum.filmorate.dao.impl.memory;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.MpaRatingDao;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikesIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.index.PopularFilmsIndex;
+import ru.yandex.practicum.filmorate.exception.GenreNotFoundException;
+import ru.yandex.practicum.filmorate.exception.MpaNotFoundException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenreChangedEvent;
+import ru.yandex.practicum.filmorate.model.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.UserDeletedEvent;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Хранилище фильмов в памяти, включается свойством filmorate.storage=memory вместо FilmDbStorage.
+ * Фильмы лежат в конкурентной карте, упорядоченной по id, поэтому страницы по afterId
+ * не требуют сортировки. Рейтинг MPA и жанры проверяются и подставляются из справочников.
+ * Как и FilmDbStorage, хранилище отдаёт и принимает копии: сохранённые объекты не меняются,
+ * а заменяются новыми, поэтому вызывающий код не может изменить их в обход хранилища.
+ */
 @Component
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 @Slf4j
 public class InMemoryFilmStorage implements FilmStorage {
     //методы добавления, удаления и модификации объектов
-    private final Map<Long, Film> films = new HashMap<>();
+    private final ConcurrentNavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final FilmLikesIndex likes = new FilmLikesIndex();
+    private final PopularFilmsIndex popularFilms = new PopularFilmsIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+
+    private final MpaRatingDao mpaRatingDao;
+    private final GenreDao genreDao;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public InMemoryFilmStorage(MpaRatingDao mpaRatingDao, GenreDao genreDao,
+                               ApplicationEventPublisher eventPublisher) {
+        this.mpaRatingDao = mpaRatingDao;
+        this.genreDao = genreDao;
+        this.eventPublisher = eventPublisher;
+    }
 
     // получение всех фильмов
     @Override
     public Collection<Film> findAll() {
-        return films.values();
+        return films.values().stream()
+                .map(InMemoryFilmStorage::copy)
+                .toList();
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(InMemoryFilmStorage::copy)
+                .toList();
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        films.values().forEach(film -> consumer.accept(copy(film)));
     }
 
     // добавление фильма
     @Override
     public Film create(Film film) {
         log.info("Добавление нового фильма в хранилище: {}", film);
-        film.setId(getNextId());
-        films.put(film.getId(), film);
+        resolveDictionaries(film);
+        film.setId(lastId.incrementAndGet());
+        films.put(film.getId(), copy(film));
+        describePopularity(film);
+        searchIndex.put(film.getId(), film.getName(), film.getDescription());
         return film;
     }
 
+    @Override
+    public List<Film> createAll(List<Film> newFilms) {
+        newFilms.forEach(this::create);
+        return newFilms;
+    }
+
     // обновление фильма
     @Override
     public Film update(Film newFilm) {
-        if (checkContainsFilm(newFilm)) {
-            log.info("Обновление фильма в хранилище с ID {}: {}", newFilm.getId(), newFilm);
-            Film existingFilm = films.get(newFilm.getId());
-            films.put(existingFilm.getId(), newFilm);
+        if (newFilm.getId() == null) {
+            throw new ValidationException("Не задан id фильма");
+        }
+        // genres = null - жанры фильма не меняются, как и в FilmDbStorage
+        boolean keepGenres = newFilm.getGenreIds() == null;
+        resolveDictionaries(newFilm);
+        // версия назначается до публикации нового объекта, чтобы читатель не увидел его со старым ETag
+        Film replaced = films.computeIfPresent(newFilm.getId(), (id, old) -> {
+            Film stored = copy(newFilm);
+            if (keepGenres) {
+                stored.setGenreIds(old.getGenreIds());
+            }
+            stored.setVersion(old.getVersion() + 1);
+            return stored;
+        });
+        if (replaced == null) {
+            log.error("Ошибка: фильм с id = {} в хранилище не найден", newFilm.getId());
+            throw new NotFoundException("Фильм с id = " + newFilm.getId() + " в хранилище не найден");
         }
-        return newFilm;
+        describePopularity(replaced);
+        searchIndex.put(replaced.getId(), replaced.getName(), replaced.getDescription());
+        log.info("Обновление фильма в хранилище с ID {}: {}", replaced.getId(), replaced);
+        return copy(replaced);
     }
 
     // удаление фильма
     @Override
     public boolean delete(Long filmId) {
         log.info("Удаление фильма из хранилища с id: {}", filmId);
-        boolean result = delete(filmId);
+        boolean result = films.remove(filmId) != null;
         if (!result) {
             log.warn("Не удалось удалить фильм из хранилища с id: {}", filmId);
+            return false;
         }
-        return result;
+        likes.removeFilm(filmId);
+        popularFilms.remove(filmId);
+        searchIndex.remove(filmId);
+        return true;
     }
 
     // поиск фильма по id
     @Override
     public Optional<Film> getFilmById(Long id) {
         log.info("Поиск фильма в хранилище по id: {}", id);
-        return Optional.ofNullable(films.get(id));
+        return Optional.ofNullable(films.get(id)).map(InMemoryFilmStorage::copy);
     }
 
-    private boolean checkContainsFilm(Film film) {
-        if (!films.containsKey(film.getId())) {
-            log.error("Ошибка: фильм с id = {} в хранилище не найден", film.getId());
-            throw new NotFoundException("Фильм с id = " + film.getId() + " в хранилище не найден");
+    @Override
+    public boolean exists(Long id) {
+        return films.containsKey(id);
+    }
+
+    @Override
+    public Optional<Long> findVersion(Long id) {
+        return Optional.ofNullable(films.get(id)).map(Film::getVersion);
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(InMemoryFilmStorage::copy)
+                .toList();
+    }
+
+    // изменения лайков одного фильма сериализуются, чтобы рейтинг и индекс рекомендаций не отставали
+    // от множества лайков и получали изменения в одном порядке
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        Set<Long> filmLikes = likes.likesOf(filmId);
+        Lock lock = likes.lockOf(filmId);
+        lock.lock();
+        try {
+            boolean added = filmLikes.add(userId);
+            popularFilms.update(filmId, filmLikes.size());
+            if (added) {
+                eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, true));
+            }
+            return added;
+        } finally {
+            lock.unlock();
         }
-        return true;
     }
 
-    private long getNextId() {
-        long currentMaxId = films.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    @Override
+    public boolean removeLike(Long filmId, Long userId) {
+        Set<Long> filmLikes = likes.likesOf(filmId);
+        Lock lock = likes.lockOf(filmId);
+        lock.lock();
+        try {
+            boolean removed = filmLikes.remove(userId);
+            popularFilms.update(filmId, filmLikes.size());
+            if (removed) {
+                eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, false));
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
     }
 
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        for (Long filmId : likes.removeUser(event.userId())) {
+            popularFilms.update(filmId, likes.count(filmId));
+        }
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count) {
+        return findByIds(popularFilms.top(count));
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count, Long genreId, Integer year) {
+        return findByIds(popularFilms.top(count, genreId, year));
+    }
+
+    @Override
+    public List<Film> search(String query, Set<FilmSearchIndex.Field> fields, int limit) {
+        return findByIds(searchIndex.search(query, fields, limit, popularFilms::getLikes));
+    }
+
+    // связь фильма с жанром уже изменена в film_genre, здесь поправляются фильм и рейтинг
+    @EventListener
+    public void onFilmGenreChanged(FilmGenreChangedEvent event) {
+        Film changed = films.computeIfPresent(event.filmId(), (id, film) -> {
+            Set<Genre> genres = film.getGenreIds().stream()
+                    .filter(genre -> !genre.getId().equals(event.genreId()))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            if (event.added()) {
+                genreDao.findById(event.genreId()).ifPresent(genres::add);
+            }
+            Film replaced = copy(film);
+            replaced.setGenreIds(genres.stream()
+                    .sorted(Comparator.comparing(Genre::getId))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+            replaced.setVersion(film.getVersion() + 1);
+            return replaced;
+        });
+        if (changed == null) {
+            return;
+        }
+        if (event.added()) {
+            popularFilms.addGenre(event.filmId(), event.genreId());
+        } else {
+            popularFilms.removeGenre(event.filmId(), event.genreId());
+        }
+    }
+
+    private void describePopularity(Film film) {
+        popularFilms.describe(film.getId(), film.getReleaseDate() != null ? film.getReleaseDate().getYear() : null,
+                film.getGenreIds().stream().map(Genre::getId).toList());
+    }
+
+    @Override
+    public void streamLikes(BiConsumer<Long, long[]> consumer) {
+        films.keySet().forEach(filmId -> {
+            long[] users = likes.getLikes(filmId).stream().mapToLong(Long::longValue).sorted().toArray();
+            if (users.length > 0) {
+                consumer.accept(filmId, users);
+            }
+        });
+    }
+
+    private static Film copy(Film film) {
+        Film copy = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                (int) film.getDuration(), film.getMpaRatingId(),
+                film.getGenreIds() != null ? new LinkedHashSet<>(film.getGenreIds()) : null);
+        copy.setVersion(film.getVersion());
+        return copy;
+    }
+
+    // проверка рейтинга MPA и жанров по справочникам и подстановка их названий
+    private void resolveDictionaries(Film film) {
+        if (film.getMpaRatingId() != null) {
+            film.setMpaRatingId(mpaRatingDao.findById(film.getMpaRatingId().getId())
+                    .orElseThrow(() -> new MpaNotFoundException("MPA rating не найден")));
+        }
+        if (film.getGenreIds() == null) {
+            film.setGenreIds(new LinkedHashSet<>());
+            return;
+        }
+        Set<Genre> genres = film.getGenreIds().stream()
+                .map(Genre::getId)
+                .distinct()
+                .sorted()
+                .map(id -> genreDao.findById(id).orElseThrow(() -> new GenreNotFoundException("Жанр не найден")))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        film.setGenreIds(genres);
+    }
 }
@@ -1,87 +1,235 @@
 package ru.yandex.practicum.filmorate.dao.impl.memory;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.FriendSuggestionIndex;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipIndex;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
-
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище пользователей в памяти, включается свойством filmorate.storage=memory вместо UserDbStorage.
+ * Дружба, как и в таблице friendship, односторонняя и хранится в {@link FriendshipIndex}:
+ * у каждого пользователя есть и его друзья, и те, у кого он в друзьях, - второе нужно,
+ * чтобы удаление пользователя не обходило всех остальных. Пользователи отдаются и сохраняются копиями,
+ * как в UserDbStorage: сохранённый объект не меняется, а заменяется новым.
+ */
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryUserStorage implements UserStorage {
 
-    private final Map<Long, User> users = new HashMap<>();
+    private final ConcurrentNavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final FriendshipIndex friendships = new FriendshipIndex();
+    private final FriendSuggestionIndex suggestions;
+
+    public InMemoryUserStorage(@Value("${filmorate.users.suggestions.capacity:100}") int suggestionsCapacity) {
+        this.suggestions = new FriendSuggestionIndex(friendships, suggestionsCapacity);
+    }
 
     // получение списка всех пользователей
     @Override
     public Collection<User> findAll() {
         log.debug("Вывод пользователей из хранилища");
-        return users.values();
+        return users.values().stream()
+                .map(InMemoryUserStorage::copy)
+                .toList();
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(InMemoryUserStorage::copy)
+                .toList();
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        users.values().forEach(user -> consumer.accept(copy(user)));
     }
 
     // создание пользователя
     @Override
     public User create(User user) {
-        user.setId(getNextId());
+        user.setId(lastId.incrementAndGet());
         log.info("Создание нового пользователя в хранилище: {}", user);
         checkAndSetUserName(user);
-        users.put(user.getId(), user);
+        users.put(user.getId(), copy(user));
         return user;
     }
 
     // обновление пользователя
     @Override
     public User update(User newUser) {
-        if (checkContainsUser(newUser)) {
-            log.info("Обновление пользователя в хранилище: {}", newUser);
-            checkAndSetUserName(newUser);
-            User existingUser = users.get(newUser.getId());
-            users.put(existingUser.getId(), newUser);
+        checkAndSetUserName(newUser);
+        User replaced = users.computeIfPresent(newUser.getId(), (id, old) -> {
+            User stored = copy(newUser);
+            stored.setVersion(old.getVersion() + 1);
+            return stored;
+        });
+        if (replaced == null) {
+            log.error("Ошибка: пользователь с id = {} в хранилище не найден", newUser.getId());
+            throw new NotFoundException("Пользователь с id = " + newUser.getId() + "в хранилище не найден");
         }
+        log.info("Обновление пользователя в хранилище: {}", replaced);
+        newUser.setVersion(replaced.getVersion());
         return newUser;
     }
 
-    // удаление пользователя
+    // удаление пользователя вместе с его связями дружбы в обе стороны
     @Override
     public boolean delete(Long userId) {
         log.info("Удаление пользователя с id из хранилища: {}", userId);
-        return users.remove(userId) != null;
+        if (users.remove(userId) == null) {
+            throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
+        }
+        long[] followers = friendships.followersOf(userId);
+        suggestions.removeUser(userId);
+        for (long followerId : followers) {
+            incrementVersion(followerId);
+        }
+        return true;
     }
 
     // получение пользователя по id
     @Override
     public Optional<User> getUserById(Long id) {
-        return Optional.ofNullable(users.get(id));
+        User user = users.get(id);
+        if (user == null) {
+            return Optional.empty();
+        }
+        User copy = copy(user);
+        copy.setFriendIds(toSet(friendships.friendsOf(id)));
+        return Optional.of(copy);
     }
 
     @Override
-    public void addFriend(Long userId, Long friendId) {
+    public boolean exists(Long id) {
+        return users.containsKey(id);
+    }
 
+    @Override
+    public Optional<Long> findVersion(Long id) {
+        return Optional.ofNullable(users.get(id)).map(User::getVersion);
     }
 
     @Override
-    public void removeFriend(Long userId, Long friendId) {
+    public void addFriend(Long userId, Long friendId) {
+        checkExists(userId);
+        checkExists(friendId);
+        Lock lock = friendships.lockOf(userId);
+        lock.lock();
+        try {
+            if (suggestions.addFriend(userId, friendId)) {
+                incrementVersion(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    @Override
+    public void removeFriend(Long userId, Long friendId) {
+        checkExists(userId);
+        checkExists(friendId);
+        Lock lock = friendships.lockOf(userId);
+        lock.lock();
+        try {
+            if (suggestions.removeFriend(userId, friendId)) {
+                incrementVersion(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public Set<Long> getFriends(Long userId) {
-        return Set.of();
+        checkExists(userId);
+        return toSet(friendships.friendsOf(userId));
     }
 
     @Override
     public Set<Long> getCommonFriends(Long userId, Long otherUserId) {
-        return Set.of();
+        return toSet(friendships.commonFriends(userId, otherUserId));
     }
 
-    private boolean checkContainsUser(User user) {
-        if (!users.containsKey(user.getId())) {
-            log.error("Ошибка: пользователь с id = {} в хранилище не найден", user.getId());
-            throw new NotFoundException("Пользователь с id = " + user.getId() + "в хранилище не найден");
+    @Override
+    public List<User> findFriends(Long userId, long afterId, int limit) {
+        checkExists(userId);
+        return usersByIds(friendships.friendsOf(userId), afterId, limit);
+    }
+
+    @Override
+    public List<User> findCommonFriends(Long userId, Long otherUserId, long afterId, int limit) {
+        return usersByIds(friendships.commonFriends(userId, otherUserId), afterId, limit);
+    }
+
+    @Override
+    public void loadFriendIds(List<User> usersToLoad) {
+        usersToLoad.forEach(user -> user.setFriendIds(toSet(friendships.friendsOf(user.getId()))));
+    }
+
+    @Override
+    public List<User> findFriendSuggestions(Long userId, int limit) {
+        checkExists(userId);
+        return suggestions.suggestions(userId, limit).stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(InMemoryUserStorage::copy)
+                .toList();
+    }
+
+    // пользователи по отсортированному массиву id, без собственных friendIds
+    private List<User> usersByIds(long[] ids, long afterId, int limit) {
+        return Arrays.stream(ids)
+                .filter(id -> id > afterId)
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(InMemoryUserStorage::copy)
+                .toList();
+    }
+
+    private void incrementVersion(long userId) {
+        users.computeIfPresent(userId, (id, user) -> {
+            User replaced = copy(user);
+            replaced.setVersion(user.getVersion() + 1);
+            return replaced;
+        });
+    }
+
+    // копия без friendIds: друзья берутся из графа при чтении
+    private static User copy(User user) {
+        User copy = new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), null);
+        copy.setVersion(user.getVersion());
+        return copy;
+    }
+
+    private static Set<Long> toSet(long[] ids) {
+        Set<Long> result = new LinkedHashSet<>(ids.length * 2);
+        for (long id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    private void checkExists(Long userId) {
+        if (!users.containsKey(userId)) {
+            throw new NotFoundException("Пользователь с id=" + userId + " не найден.");
         }
-        return true;
     }
 
     private void checkAndSetUserName(User user) {
@@ -90,15 +238,4 @@ public class InMemoryUserStorage implements UserStorage {
             user.setName(user.getLogin());
         }
     }
-
-
-    private long getNextId() {
-        long currentMaxId = users.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
-    }
-
 }
@@ -0,0 +1,206 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс совместных лайков фильмов (item-item) для рекомендаций.
+ * Лайки хранятся в обе стороны отсортированными массивами long (копирование при записи),
+ * для каждого фильма - до capacity соседей: фильмов, которые чаще всего лайкают те же пользователи,
+ * в виде параллельных массивов id и числа общих лайков. Строки соседей строятся отдельно от изменения
+ * лайков: изменение только помечает затронутые фильмы, а их строки пересчитываются при refresh
+ * или при чтении рекомендаций, которым они нужны.
+ */
+public class CoLikeIndex {
+
+    private final int capacity;
+    private final Map<Long, long[]> likersByFilm = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> likesByUser = new ConcurrentHashMap<>();
+    private final Map<Long, Neighbours> neighbours = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyFilms = ConcurrentHashMap.newKeySet();
+
+    public CoLikeIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // полная загрузка: likers - отсортированные id пользователей, лайкнувших фильм;
+    // строки соседей всех фильмов строятся параллельно, фильмы делятся на части fork-join пулом
+    public void load(Map<Long, long[]> likers) {
+        likersByFilm.clear();
+        likesByUser.clear();
+        neighbours.clear();
+        dirtyFilms.clear();
+        likersByFilm.putAll(likers);
+        Map<Long, Integer> likesCount = new HashMap<>();
+        likers.values().forEach(users -> {
+            for (long userId : users) {
+                likesCount.merge(userId, 1, Integer::sum);
+            }
+        });
+        Map<Long, long[]> userLikes = new HashMap<>();
+        likesCount.forEach((userId, count) -> userLikes.put(userId, new long[count]));
+        Map<Long, Integer> filled = new HashMap<>();
+        // фильмы перебираются по возрастанию id, поэтому массивы пользователей заполняются отсортированными
+        likers.keySet().stream().sorted().forEach(filmId -> {
+            for (long userId : likers.get(filmId)) {
+                int position = filled.merge(userId, 1, Integer::sum) - 1;
+                userLikes.get(userId)[position] = filmId;
+            }
+        });
+        likesByUser.putAll(userLikes);
+        rebuild(likersByFilm.keySet().stream().mapToLong(Long::longValue).toArray());
+    }
+
+    // обе стороны лайка меняются внутри compute по фильму: изменения одного фильма не перемешиваются,
+    // а карта пользователей всегда захватывается после карты фильмов, поэтому взаимных блокировок нет
+    public boolean addLike(long filmId, long userId) {
+        boolean[] added = new boolean[1];
+        likersByFilm.compute(filmId, (id, users) -> {
+            long[] result = SortedLongArrays.insert(users, userId);
+            added[0] = result != users;
+            if (added[0]) {
+                likesByUser.compute(userId, (user, films) -> SortedLongArrays.insert(films, filmId));
+            }
+            return result;
+        });
+        if (added[0]) {
+            markDirty(filmId, userId);
+        }
+        return added[0];
+    }
+
+    public boolean removeLike(long filmId, long userId) {
+        boolean[] removed = new boolean[1];
+        likersByFilm.computeIfPresent(filmId, (id, users) -> {
+            long[] result = SortedLongArrays.delete(users, userId);
+            removed[0] = result != users;
+            if (removed[0]) {
+                likesByUser.computeIfPresent(userId, (user, films) -> {
+                    long[] rest = SortedLongArrays.delete(films, filmId);
+                    return rest.length == 0 ? null : rest;
+                });
+            }
+            return result.length == 0 ? null : result;
+        });
+        if (removed[0]) {
+            markDirty(filmId, userId);
+        }
+        return removed[0];
+    }
+
+    public void removeUser(long userId) {
+        for (long filmId : likesOf(userId)) {
+            removeLike(filmId, userId);
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        for (long userId : likersOf(filmId)) {
+            removeLike(filmId, userId);
+        }
+        neighbours.remove(filmId);
+        dirtyFilms.remove(filmId);
+    }
+
+    // пересчёт строк всех помеченных фильмов, возвращает их число
+    public int refresh() {
+        long[] films = dirtyFilms.stream().mapToLong(Long::longValue).toArray();
+        films = Arrays.stream(films).filter(dirtyFilms::remove).toArray();
+        rebuild(films);
+        return films.length;
+    }
+
+    // до limit фильмов, которые пользователь ещё не лайкал: вес фильма - сумма общих лайков
+    // с фильмами пользователя; при равенстве выше фильм с меньшим id
+    public List<Long> recommend(long userId, int limit) {
+        long[] liked = likesOf(userId);
+        Map<Long, Long> scores = new HashMap<>();
+        for (long filmId : liked) {
+            if (dirtyFilms.remove(filmId)) {
+                rebuildRow(filmId);
+            }
+            Neighbours row = neighbours.get(filmId);
+            if (row == null) {
+                continue;
+            }
+            for (int i = 0; i < row.filmIds().length; i++) {
+                long candidateId = row.filmIds()[i];
+                if (Arrays.binarySearch(liked, candidateId) < 0) {
+                    scores.merge(candidateId, (long) row.counts()[i], Long::sum);
+                }
+            }
+        }
+        Comparator<Map.Entry<Long, Long>> order = Map.Entry.<Long, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        return scores.entrySet().stream()
+                .sorted(order)
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public long[] likesOf(long userId) {
+        return likesByUser.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    public long[] likersOf(long filmId) {
+        return likersByFilm.getOrDefault(filmId, SortedLongArrays.EMPTY);
+    }
+
+    // у фильма меняется строка соседей, у остальных фильмов пользователя - число общих лайков с ним
+    private void markDirty(long filmId, long userId) {
+        dirtyFilms.add(filmId);
+        for (long otherFilmId : likesOf(userId)) {
+            dirtyFilms.add(otherFilmId);
+        }
+    }
+
+    private void rebuild(long[] filmIds) {
+        Arrays.stream(filmIds).parallel().forEach(this::rebuildRow);
+    }
+
+    private void rebuildRow(long filmId) {
+        long[] users = likersOf(filmId);
+        if (users.length == 0) {
+            neighbours.remove(filmId);
+            return;
+        }
+        Map<Long, Integer> counts = new HashMap<>();
+        for (long userId : users) {
+            for (long otherFilmId : likesOf(userId)) {
+                if (otherFilmId != filmId) {
+                    counts.merge(otherFilmId, 1, Integer::sum);
+                }
+            }
+        }
+        Comparator<Map.Entry<Long, Integer>> order = Map.Entry.<Long, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Long, Integer>> best = new PriorityQueue<>(capacity + 1, order.reversed());
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            best.add(entry);
+            if (best.size() > capacity) {
+                best.poll();
+            }
+        }
+        List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(best);
+        ranked.sort(order);
+        long[] ids = new long[ranked.size()];
+        int[] values = new int[ranked.size()];
+        for (int i = 0; i < ranked.size(); i++) {
+            ids[i] = ranked.get(i).getKey();
+            values[i] = ranked.get(i).getValue();
+        }
+        neighbours.put(filmId, new Neighbours(ids, values));
+    }
+
+    // соседи фильма по убыванию числа общих лайков
+    private record Neighbours(long[] filmIds, int[] counts) {
+    }
+}
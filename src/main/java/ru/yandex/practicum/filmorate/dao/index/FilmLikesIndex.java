@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лайки фильмов в памяти: для каждого фильма - конкурентное множество id пользователей
+ * и блокировка, на которой хранилище сериализует изменения лайков этого фильма,
+ * поэтому лайки разных фильмов меняются параллельно. Чтение не блокируется.
+ * Блокировка - ReentrantLock, а не монитор: под ней выполняется запрос к базе,
+ * и synchronized закрепил бы виртуальный поток за несущим на всё время запроса.
+ */
+public class FilmLikesIndex {
+
+    private final Map<Long, FilmLikes> likesByFilm = new ConcurrentHashMap<>();
+
+    // множество лайков фильма, создаётся при первом обращении
+    public Set<Long> likesOf(long filmId) {
+        return filmLikes(filmId).users();
+    }
+
+    // блокировка изменений лайков фильма
+    public Lock lockOf(long filmId) {
+        return filmLikes(filmId).lock();
+    }
+
+    // неизменяемое представление лайков фильма
+    public Set<Long> getLikes(long filmId) {
+        FilmLikes likes = likesByFilm.get(filmId);
+        return likes != null ? Collections.unmodifiableSet(likes.users()) : Set.of();
+    }
+
+    public int count(long filmId) {
+        FilmLikes likes = likesByFilm.get(filmId);
+        return likes != null ? likes.users().size() : 0;
+    }
+
+    public void removeFilm(long filmId) {
+        likesByFilm.remove(filmId);
+    }
+
+    // удаление всех лайков пользователя, возвращает id фильмов, у которых они были
+    public List<Long> removeUser(long userId) {
+        List<Long> affectedFilms = new ArrayList<>();
+        likesByFilm.forEach((filmId, likes) -> {
+            likes.lock().lock();
+            try {
+                if (likes.users().remove(userId)) {
+                    affectedFilms.add(filmId);
+                }
+            } finally {
+                likes.lock().unlock();
+            }
+        });
+        return affectedFilms;
+    }
+
+    public void clear() {
+        likesByFilm.clear();
+    }
+
+    private FilmLikes filmLikes(long filmId) {
+        return likesByFilm.computeIfAbsent(filmId, id -> new FilmLikes(ConcurrentHashMap.newKeySet(),
+                new ReentrantLock()));
+    }
+
+    private record FilmLikes(Set<Long> users, Lock lock) {
+    }
+}
@@ -0,0 +1,209 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+/**
+ * Инвертированный индекс для поиска фильмов по названию и описанию.
+ * Текст разбивается на слова по границам букв и цифр (кириллица - обычные буквы), приводится
+ * к нижнему регистру, "ё" заменяется на "е". Для каждого поля слова лежат в отсортированной карте,
+ * поэтому слово запроса ищется как префикс - диапазоном карты. Фильмы слова хранятся
+ * отсортированным массивом long.
+ */
+public class FilmSearchIndex {
+
+    public enum Field { TITLE, DESCRIPTION }
+
+    // строка больше любого слова с тем же началом: граница диапазона при поиске по префиксу
+    private static final char PREFIX_END = Character.MAX_VALUE;
+
+    private final Map<Field, NavigableMap<String, long[]>> postings = Map.of(
+            Field.TITLE, new ConcurrentSkipListMap<>(),
+            Field.DESCRIPTION, new ConcurrentSkipListMap<>());
+    // слова каждого фильма по полям, нужны, чтобы убрать фильм из индекса при изменении или удалении
+    private final Map<Long, FilmTerms> termsByFilm = new ConcurrentHashMap<>();
+
+    // приём текста фильма при массовой загрузке
+    @FunctionalInterface
+    public interface FilmTextConsumer {
+        void accept(long filmId, String name, String description);
+    }
+
+    // массовая загрузка: source передаёт фильмы в порядке возрастания id,
+    // поэтому массивы фильмов каждого слова собираются уже отсортированными
+    public void load(Consumer<FilmTextConsumer> source) {
+        Map<String, LongList> titles = new HashMap<>();
+        Map<String, LongList> descriptions = new HashMap<>();
+        Map<Long, FilmTerms> terms = new HashMap<>();
+        source.accept((filmId, name, description) -> {
+            FilmTerms filmTerms = new FilmTerms(tokenize(name), tokenize(description));
+            terms.put(filmId, filmTerms);
+            for (String term : filmTerms.title()) {
+                titles.computeIfAbsent(term, t -> new LongList()).add(filmId);
+            }
+            for (String term : filmTerms.description()) {
+                descriptions.computeIfAbsent(term, t -> new LongList()).add(filmId);
+            }
+        });
+        clear();
+        titles.forEach((term, films) -> postings.get(Field.TITLE).put(term, films.toArray()));
+        descriptions.forEach((term, films) -> postings.get(Field.DESCRIPTION).put(term, films.toArray()));
+        termsByFilm.putAll(terms);
+    }
+
+    // добавление или замена текста фильма
+    public void put(long filmId, String name, String description) {
+        FilmTerms current = new FilmTerms(tokenize(name), tokenize(description));
+        termsByFilm.compute(filmId, (id, old) -> {
+            if (old != null) {
+                unindex(id, old);
+            }
+            index(id, current);
+            return current;
+        });
+    }
+
+    public void remove(long filmId) {
+        termsByFilm.computeIfPresent(filmId, (id, old) -> {
+            unindex(id, old);
+            return null;
+        });
+    }
+
+    public void clear() {
+        postings.values().forEach(Map::clear);
+        termsByFilm.clear();
+    }
+
+    // фильмы, в полях fields которых есть слова, начинающиеся с каждого слова запроса,
+    // по убыванию likes, при равенстве - по возрастанию id; не больше limit.
+    // Фильмы собираются только по самому редкому слову запроса, остальные слова
+    // проверяются по словам найденных фильмов, а не пересечением длинных списков
+    public List<Long> search(String query, Set<Field> fields, int limit, LongUnaryOperator likes) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || fields.isEmpty()) {
+            return List.of();
+        }
+        String rarest = words.stream()
+                .min(Comparator.comparingLong(word -> matchCount(word, fields)))
+                .orElseThrow();
+        Comparator<long[]> order = Comparator.<long[]>comparingLong(entry -> entry[1]).reversed()
+                .thenComparingLong(entry -> entry[0]);
+        return Arrays.stream(matchPrefix(rarest, fields))
+                .filter(filmId -> words.stream()
+                        .allMatch(word -> word.equals(rarest) || hasPrefix(filmId, word, fields)))
+                .mapToObj(filmId -> new long[]{filmId, likes.applyAsLong(filmId)})
+                .sorted(order)
+                .limit(limit)
+                .map(entry -> entry[0])
+                .toList();
+    }
+
+    // слова текста без повторов в порядке появления
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    // оценка сверху числа фильмов со словами, начинающимися с prefix
+    private long matchCount(String prefix, Set<Field> fields) {
+        long count = 0;
+        for (Field field : fields) {
+            for (long[] ids : range(field, prefix).values()) {
+                count += ids.length;
+            }
+        }
+        return count;
+    }
+
+    private boolean hasPrefix(long filmId, String prefix, Set<Field> fields) {
+        FilmTerms terms = termsByFilm.get(filmId);
+        if (terms == null) {
+            return false;
+        }
+        return (fields.contains(Field.TITLE) && terms.title().stream().anyMatch(term -> term.startsWith(prefix)))
+                || (fields.contains(Field.DESCRIPTION)
+                && terms.description().stream().anyMatch(term -> term.startsWith(prefix)));
+    }
+
+    private NavigableMap<String, long[]> range(Field field, String prefix) {
+        return postings.get(field).subMap(prefix, true, prefix + PREFIX_END, false);
+    }
+
+    // объединение фильмов всех слов с данным началом во всех полях
+    private long[] matchPrefix(String prefix, Set<Field> fields) {
+        LongStream films = LongStream.empty();
+        for (Field field : fields) {
+            for (long[] ids : range(field, prefix).values()) {
+                films = LongStream.concat(films, Arrays.stream(ids));
+            }
+        }
+        return films.sorted().distinct().toArray();
+    }
+
+    private void index(long filmId, FilmTerms terms) {
+        terms.title().forEach(term -> postings.get(Field.TITLE)
+                .compute(term, (t, ids) -> SortedLongArrays.insert(ids, filmId)));
+        terms.description().forEach(term -> postings.get(Field.DESCRIPTION)
+                .compute(term, (t, ids) -> SortedLongArrays.insert(ids, filmId)));
+    }
+
+    private void unindex(long filmId, FilmTerms terms) {
+        terms.title().forEach(term -> postings.get(Field.TITLE)
+                .computeIfPresent(term, (t, ids) -> withoutFilm(ids, filmId)));
+        terms.description().forEach(term -> postings.get(Field.DESCRIPTION)
+                .computeIfPresent(term, (t, ids) -> withoutFilm(ids, filmId)));
+    }
+
+    private static long[] withoutFilm(long[] ids, long filmId) {
+        long[] result = SortedLongArrays.delete(ids, filmId);
+        return result.length == 0 ? null : result;
+    }
+
+    private record FilmTerms(List<String> title, List<String> description) {
+    }
+
+    // растущий массив long для массовой загрузки
+    private static final class LongList {
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рекомендации друзей ("возможно, вы знакомы") поверх {@link FriendshipIndex}.
+ * Кандидат для пользователя - друг его друга, который сам не в друзьях; вес кандидата -
+ * число друзей пользователя, у которых кандидат в друзьях. Для каждого запрошенного пользователя
+ * хранится не больше capacity лучших кандидатов и верхняя граница веса всех остальных (floor).
+ * Изменения дружбы проходят через этот индекс и поправляют веса сразу; если граница не позволяет
+ * отдать точный результат, кандидаты пересчитываются по графу.
+ */
+public class FriendSuggestionIndex {
+
+    // больше общих друзей - выше, при равенстве - меньший id
+    private static final Comparator<Map.Entry<Long, Integer>> RANK =
+            Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private final FriendshipIndex friendships;
+    private final int capacity;
+    private final Map<Long, Candidates> candidates = new ConcurrentHashMap<>();
+    // изменения графа исключают чтение, чтобы пересчёт не увидел ребро, вес по которому ещё не учтён
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FriendSuggestionIndex(FriendshipIndex friendships, int capacity) {
+        this.friendships = friendships;
+        this.capacity = capacity;
+    }
+
+    // лучшие кандидаты пользователя; при limit больше capacity считаются по графу без сохранения
+    public List<Long> suggestions(long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            if (limit > capacity) {
+                return ids(rank(userId, limit).ranked(), limit);
+            }
+            Candidates current = candidates.computeIfAbsent(userId, id -> rank(id, capacity));
+            List<Map.Entry<Long, Integer>> ranked = current.ranked();
+            if (!current.isExact(ranked, limit)) {
+                current = rank(userId, capacity);
+                candidates.put(userId, current);
+                ranked = current.ranked();
+            }
+            return ids(ranked, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // userId добавляет friendId: у userId появляются пути через friendId,
+    // у тех, кто дружит с userId, - путь к friendId
+    public boolean addFriend(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            if (!friendships.add(userId, friendId)) {
+                return false;
+            }
+            Candidates own = candidates.get(userId);
+            if (own != null) {
+                own.remove(friendId);
+                for (long candidateId : friendships.friendsOf(friendId)) {
+                    increment(userId, own, candidateId);
+                }
+            }
+            for (long followerId : friendships.followersOf(userId)) {
+                Candidates entry = candidates.get(followerId);
+                if (entry != null) {
+                    increment(followerId, entry, friendId);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeFriend(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            return remove(userId, friendId, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // удаление пользователя со всеми рёбрами; сам он в кандидаты больше не предлагается
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            for (long friendId : friendships.friendsOf(userId)) {
+                remove(userId, friendId, false);
+            }
+            for (long followerId : friendships.followersOf(userId)) {
+                remove(followerId, userId, false);
+            }
+            candidates.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // сброс сохранённых кандидатов, например после массовой загрузки графа
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            candidates.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean remove(long userId, long friendId, boolean offerFriend) {
+        if (!friendships.remove(userId, friendId)) {
+            return false;
+        }
+        Candidates own = candidates.get(userId);
+        if (own != null) {
+            for (long candidateId : friendships.friendsOf(friendId)) {
+                own.decrement(candidateId);
+            }
+            // бывший друг сам становится кандидатом
+            if (offerFriend) {
+                own.offer(friendId, mutualFriends(userId, friendId));
+            }
+        }
+        for (long followerId : friendships.followersOf(userId)) {
+            Candidates entry = candidates.get(followerId);
+            if (entry != null) {
+                entry.decrement(friendId);
+            }
+        }
+        return true;
+    }
+
+    private void increment(long userId, Candidates entry, long candidateId) {
+        if (candidateId == userId || Arrays.binarySearch(friendships.friendsOf(userId), candidateId) >= 0) {
+            return;
+        }
+        if (!entry.increment(candidateId)) {
+            entry.offer(candidateId, mutualFriends(userId, candidateId));
+        }
+    }
+
+    // число друзей userId, у которых candidateId в друзьях
+    private int mutualFriends(long userId, long candidateId) {
+        return SortedLongArrays.intersection(friendships.friendsOf(userId),
+                friendships.followersOf(candidateId)).length;
+    }
+
+    // полный подсчёт кандидатов по графу, сохраняются size лучших
+    private Candidates rank(long userId, int size) {
+        long[] own = friendships.friendsOf(userId);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (long friendId : own) {
+            for (long candidateId : friendships.friendsOf(friendId)) {
+                if (candidateId != userId && Arrays.binarySearch(own, candidateId) < 0) {
+                    counts.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+        // куча из size + 1 элементов: худший из них - лучший из невошедших, он задаёт границу
+        PriorityQueue<Map.Entry<Long, Integer>> best = new PriorityQueue<>(size + 2, RANK.reversed());
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            best.add(entry);
+            if (best.size() > size + 1) {
+                best.poll();
+            }
+        }
+        Candidates result = new Candidates(capacity);
+        if (best.size() > size) {
+            result.floor = best.poll().getValue();
+        }
+        best.forEach(entry -> result.scores.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    private static List<Long> ids(List<Map.Entry<Long, Integer>> ranked, int limit) {
+        return ranked.stream()
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private static final class Candidates {
+        private final int capacity;
+        private final Map<Long, Integer> scores = new HashMap<>();
+        // верхняя граница веса кандидатов, которых нет в scores
+        private int floor;
+        // кандидаты только что посчитаны по графу: невошедшие с весом floor идут после всех вошедших
+        private boolean fresh = true;
+
+        Candidates(int capacity) {
+            this.capacity = capacity;
+        }
+
+        List<Map.Entry<Long, Integer>> ranked() {
+            List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort(RANK);
+            return ranked;
+        }
+
+        // первые limit кандидатов точны, если ни один невошедший не может оказаться выше; после изменений
+        // невошедший с весом floor может иметь меньший id, поэтому последний вошедший должен быть строго выше
+        boolean isExact(List<Map.Entry<Long, Integer>> ranked, int limit) {
+            return floor == 0 || fresh || (ranked.size() >= limit && ranked.get(limit - 1).getValue() > floor);
+        }
+
+        boolean increment(long candidateId) {
+            fresh = false;
+            return scores.computeIfPresent(candidateId, (id, score) -> score + 1) != null;
+        }
+
+        void remove(long candidateId) {
+            fresh = false;
+            scores.remove(candidateId);
+        }
+
+        void offer(long candidateId, int score) {
+            if (score == 0) {
+                return;
+            }
+            fresh = false;
+            if (scores.size() < capacity) {
+                scores.put(candidateId, score);
+                return;
+            }
+            Map.Entry<Long, Integer> worst = scores.entrySet().stream().max(RANK).orElseThrow();
+            if (score > worst.getValue()) {
+                floor = Math.max(floor, worst.getValue());
+                scores.remove(worst.getKey());
+                scores.put(candidateId, score);
+            } else {
+                floor = Math.max(floor, score);
+            }
+        }
+
+        void decrement(long candidateId) {
+            fresh = false;
+            scores.computeIfPresent(candidateId, (id, score) -> score > 1 ? score - 1 : null);
+        }
+    }
+}
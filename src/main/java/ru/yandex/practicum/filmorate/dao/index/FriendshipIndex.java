@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Граф дружбы в памяти. Дружба односторонняя, как в таблице friendship: для каждого пользователя
+ * хранится отсортированный массив long с id его друзей и такой же массив с id тех, у кого он в друзьях.
+ * Ребро занимает 8 байт в каждом направлении против ~50 байт на элемент HashSet&lt;Long&gt;.
+ * Массивы не меняются после публикации (копирование при записи), поэтому чтение не блокируется,
+ * а общие друзья считаются пересечением двух отсортированных массивов.
+ */
+public class FriendshipIndex {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Map<Long, long[]> friends = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> followers = new ConcurrentHashMap<>();
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    public FriendshipIndex() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // блокировка изменений дружбы пользователя: хранилище держит её на время записи в базу,
+    // чтобы порядок изменений в памяти совпадал с порядком в таблице
+    public Lock lockOf(long userId) {
+        return locks[Long.hashCode(userId) & (LOCK_STRIPES - 1)];
+    }
+
+    // отсортированные id друзей пользователя; массив нельзя изменять
+    public long[] friendsOf(long userId) {
+        return friends.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    // отсортированные id пользователей, у которых userId в друзьях; массив нельзя изменять
+    public long[] followersOf(long userId) {
+        return followers.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    public boolean add(long userId, long friendId) {
+        boolean[] added = new boolean[1];
+        friends.compute(userId, (id, ids) -> {
+            long[] result = SortedLongArrays.insert(ids, friendId);
+            added[0] = result != ids;
+            return result;
+        });
+        if (added[0]) {
+            followers.compute(friendId, (id, ids) -> SortedLongArrays.insert(ids, userId));
+        }
+        return added[0];
+    }
+
+    public boolean remove(long userId, long friendId) {
+        boolean[] removed = new boolean[1];
+        friends.computeIfPresent(userId, (id, ids) -> {
+            long[] result = SortedLongArrays.delete(ids, friendId);
+            removed[0] = result != ids;
+            return result.length == 0 ? null : result;
+        });
+        if (removed[0]) {
+            followers.computeIfPresent(friendId, (id, ids) -> {
+                long[] result = SortedLongArrays.delete(ids, userId);
+                return result.length == 0 ? null : result;
+            });
+        }
+        return removed[0];
+    }
+
+    // удаление пользователя со всеми рёбрами в обе стороны
+    public void removeUser(long userId) {
+        for (long friendId : friendsOf(userId)) {
+            remove(userId, friendId);
+        }
+        for (long followerId : followersOf(userId)) {
+            remove(followerId, userId);
+        }
+    }
+
+    // массовая загрузка: ids - друзья пользователя в порядке возрастания
+    public void putFriends(long userId, long[] ids) {
+        friends.put(userId, ids);
+    }
+
+    // массовая загрузка: ids - пользователи, у которых userId в друзьях, в порядке возрастания
+    public void putFollowers(long userId, long[] ids) {
+        followers.put(userId, ids);
+    }
+
+    public void clear() {
+        friends.clear();
+        followers.clear();
+    }
+
+    // общие друзья двух пользователей в порядке возрастания id
+    public long[] commonFriends(long userId, long otherUserId) {
+        return SortedLongArrays.intersection(friendsOf(userId), friendsOf(otherUserId));
+    }
+}
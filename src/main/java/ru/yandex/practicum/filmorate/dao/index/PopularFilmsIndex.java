@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рейтинг фильмов по количеству лайков.
+ * Хранит пары (фильм, число лайков) в skip-list, упорядоченном по убыванию лайков,
+ * поэтому выборка топ-N стоит O(log n + N) вместо сортировки всех фильмов.
+ * Такие же упорядоченные списки ведутся отдельно для каждого жанра и каждого года выпуска:
+ * топ по жанру или году читается из своего списка, топ по жанру и году - из меньшего из двух списков
+ * с отбором фильмов по другому ключу. Размеры списков считаются отдельно: size() у skip-list линейный.
+ */
+public class PopularFilmsIndex {
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final Map<Long, FilmRank> films = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Long, RankList> rankingByGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, RankList> rankingByYear = new ConcurrentHashMap<>();
+
+    // установка текущего числа лайков фильма
+    public void update(long filmId, long likes) {
+        films.compute(filmId, (id, old) -> replace(id, old,
+                old != null ? new FilmRank(likes, old.year(), old.genreIds()) : new FilmRank(likes, null, Set.of())));
+    }
+
+    // установка года выпуска и жанров фильма, число лайков сохраняется
+    public void describe(long filmId, Integer year, Collection<Long> genreIds) {
+        films.compute(filmId, (id, old) -> replace(id, old,
+                new FilmRank(old != null ? old.likes() : 0, year, Set.copyOf(genreIds))));
+    }
+
+    public void setYear(long filmId, Integer year) {
+        films.computeIfPresent(filmId, (id, old) -> replace(id, old, new FilmRank(old.likes(), year, old.genreIds())));
+    }
+
+    public void addGenre(long filmId, long genreId) {
+        films.computeIfPresent(filmId, (id, old) -> {
+            Set<Long> genreIds = new HashSet<>(old.genreIds());
+            genreIds.add(genreId);
+            return replace(id, old, new FilmRank(old.likes(), old.year(), Set.copyOf(genreIds)));
+        });
+    }
+
+    public void removeGenre(long filmId, long genreId) {
+        films.computeIfPresent(filmId, (id, old) -> {
+            Set<Long> genreIds = new HashSet<>(old.genreIds());
+            genreIds.remove(genreId);
+            return replace(id, old, new FilmRank(old.likes(), old.year(), Set.copyOf(genreIds)));
+        });
+    }
+
+    public void remove(long filmId) {
+        films.computeIfPresent(filmId, (id, old) -> {
+            unlist(id, old);
+            return null;
+        });
+    }
+
+    public void clear() {
+        films.clear();
+        ranking.clear();
+        rankingByGenre.clear();
+        rankingByYear.clear();
+    }
+
+    public long getLikes(long filmId) {
+        FilmRank rank = films.get(filmId);
+        return rank != null ? rank.likes() : 0;
+    }
+
+    // id фильмов в порядке убывания лайков, не больше count
+    public List<Long> top(int count) {
+        return top(count, null, null);
+    }
+
+    // id фильмов жанра genreId и года year (null - без отбора) в порядке убывания лайков, не больше count
+    public List<Long> top(int count, Long genreId, Integer year) {
+        RankList byYear = year != null ? rankingByYear.getOrDefault(year, RankList.EMPTY) : null;
+        RankList byGenre = genreId != null ? rankingByGenre.getOrDefault(genreId, RankList.EMPTY) : null;
+        NavigableSet<Entry> source = ranking;
+        // при отборе по обоим ключам обходится меньший список, другой ключ проверяется по фильму
+        boolean filterGenre = false;
+        boolean filterYear = false;
+        if (byYear != null && byGenre != null) {
+            filterGenre = byYear.size() <= byGenre.size();
+            filterYear = !filterGenre;
+            source = filterGenre ? byYear.entries() : byGenre.entries();
+        } else if (byYear != null) {
+            source = byYear.entries();
+        } else if (byGenre != null) {
+            source = byGenre.entries();
+        }
+        List<Long> result = new ArrayList<>(Math.max(0, Math.min(count, films.size())));
+        for (Entry entry : source) {
+            if (result.size() >= count) {
+                break;
+            }
+            if ((filterGenre && !hasGenre(entry.filmId(), genreId))
+                    || (filterYear && !hasYear(entry.filmId(), year))) {
+                continue;
+            }
+            result.add(entry.filmId());
+        }
+        return result;
+    }
+
+    public int size() {
+        return films.size();
+    }
+
+    private boolean hasGenre(long filmId, long genreId) {
+        FilmRank rank = films.get(filmId);
+        return rank != null && rank.genreIds().contains(genreId);
+    }
+
+    private boolean hasYear(long filmId, int year) {
+        FilmRank rank = films.get(filmId);
+        return rank != null && rank.year() != null && rank.year() == year;
+    }
+
+    // перенос фильма из списков по старому состоянию в списки по новому
+    private FilmRank replace(long filmId, FilmRank old, FilmRank current) {
+        if (old != null) {
+            unlist(filmId, old);
+        }
+        Entry entry = new Entry(filmId, current.likes());
+        ranking.add(entry);
+        if (current.year() != null) {
+            rankingByYear.computeIfAbsent(current.year(), year -> new RankList()).add(entry);
+        }
+        for (Long genreId : current.genreIds()) {
+            rankingByGenre.computeIfAbsent(genreId, id -> new RankList()).add(entry);
+        }
+        return current;
+    }
+
+    private void unlist(long filmId, FilmRank rank) {
+        Entry entry = new Entry(filmId, rank.likes());
+        ranking.remove(entry);
+        if (rank.year() != null) {
+            removeFrom(rankingByYear.get(rank.year()), entry);
+        }
+        for (Long genreId : rank.genreIds()) {
+            removeFrom(rankingByGenre.get(genreId), entry);
+        }
+    }
+
+    private static void removeFrom(RankList list, Entry entry) {
+        if (list != null) {
+            list.remove(entry);
+        }
+    }
+
+    private record Entry(long filmId, long likes) {
+    }
+
+    // список жанра или года со счётчиком элементов
+    private record RankList(NavigableSet<Entry> entries, AtomicInteger counter) {
+
+        static final RankList EMPTY = new RankList(Collections.emptyNavigableSet(), new AtomicInteger());
+
+        RankList() {
+            this(new ConcurrentSkipListSet<>(ORDER), new AtomicInteger());
+        }
+
+        void add(Entry entry) {
+            if (entries.add(entry)) {
+                counter.incrementAndGet();
+            }
+        }
+
+        void remove(Entry entry) {
+            if (entries.remove(entry)) {
+                counter.decrementAndGet();
+            }
+        }
+
+        int size() {
+            return counter.get();
+        }
+    }
+
+    // состояние фильма, по которому он разложен по спискам
+    private record FilmRank(long likes, Integer year, Set<Long> genreIds) {
+    }
+}
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.Arrays;
+
+/**
+ * Операции над отсортированными массивами id, которые индексы хранят вместо множеств Long.
+ * Массивы не изменяются: вставка и удаление возвращают новый массив или тот же, если менять нечего.
+ */
+final class SortedLongArrays {
+
+    static final long[] EMPTY = new long[0];
+    // при таком и большем различии размеров массивов меньший ищется в большем двоичным поиском
+    private static final int GALLOP_RATIO = 32;
+
+    private SortedLongArrays() {
+    }
+
+    // пересечение двух отсортированных массивов id
+    static long[] intersection(long[] first, long[] second) {
+        if (first.length > second.length) {
+            long[] swap = first;
+            first = second;
+            second = swap;
+        }
+        if (first.length == 0) {
+            return EMPTY;
+        }
+        long[] result = new long[first.length];
+        int size = 0;
+        if (second.length / first.length >= GALLOP_RATIO) {
+            int from = 0;
+            for (long id : first) {
+                int position = Arrays.binarySearch(second, from, second.length, id);
+                if (position >= 0) {
+                    result[size++] = id;
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < first.length && j < second.length) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    result[size++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // новый массив со вставленным id или тот же массив, если id уже есть
+    static long[] insert(long[] ids, long id) {
+        if (ids == null) {
+            return new long[]{id};
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        position = -position - 1;
+        long[] result = new long[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        result[position] = id;
+        System.arraycopy(ids, position, result, position + 1, ids.length - position);
+        return result;
+    }
+
+    // новый массив без id или тот же массив, если id в нём нет
+    static long[] delete(long[] ids, long id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        System.arraycopy(ids, position + 1, result, position, ids.length - position - 1);
+        return result;
+    }
+}
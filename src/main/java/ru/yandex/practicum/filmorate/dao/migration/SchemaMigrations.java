@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.dao.migration;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Однократные миграции поверх schema.sql. schema.sql выполняется при каждом запуске и содержит только
+ * дешёвые идемпотентные определения, а скрипты, которым нужен проход по таблицам, лежат в classpath:migration
+ * и выполняются один раз: номер миграции записывается в schema_migration в той же транзакции.
+ * H2 фиксирует DDL сразу, поэтому скрипты должны выдерживать повторный запуск после сбоя.
+ * Хранилища, которые прогревают индексы из базы при запуске, создаются после этого компонента.
+ */
+@Component("schemaMigrations")
+@Slf4j
+public class SchemaMigrations {
+
+    // по возрастанию номеров; новые миграции только дописываются в конец
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "relation_keys"),
+            new Migration(2, "likes_count"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SchemaMigrations(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void migrateOnStartup() {
+        migrate();
+    }
+
+    // применение ещё не выполненных миграций, возвращает их число
+    public int migrate() {
+        Set<Integer> applied = new HashSet<>(
+                jdbcTemplate.queryForList("SELECT version FROM schema_migration", Integer.class));
+        int count = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (applied.contains(migration.version())) {
+                continue;
+            }
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> {
+                ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                        new ClassPathResource(migration.script()));
+                populator.setSqlScriptEncoding("UTF-8");
+                DatabasePopulatorUtils.execute(populator, jdbcTemplate.getDataSource());
+                jdbcTemplate.update("INSERT INTO schema_migration (version, description) VALUES (?, ?)",
+                        migration.version(), migration.description());
+            });
+            log.info("Применена миграция {} ({}) за {} мс", migration.version(), migration.description(),
+                    (System.nanoTime() - start) / 1_000_000);
+            count++;
+        }
+        return count;
+    }
+
+    private record Migration(int version, String description) {
+
+        String script() {
+            return "migration/V" + version + "__" + description + ".sql";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.dao.writebehind;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Буфер отложенной записи изменений связей (лайков, дружбы). Для каждого ключа хранится одно действие:
+ * true - строку добавить, false - удалить. Хранилище кладёт в буфер только действительные изменения
+ * (индекс в памяти уже изменился), поэтому добавление и удаление одного ключа, не дошедшие до базы,
+ * гасят друг друга. flush забирает накопленное целиком и передаёт writer одной пачкой;
+ * если запись не удалась, пачка возвращается в буфер, более новые действия по тем же ключам важнее.
+ * Для каждого владельца (фильма, пользователя) считается число ключей, ещё не записанных в базу,
+ * включая пачку, которая пишется прямо сейчас.
+ */
+public class WriteBehindBuffer<K> {
+
+    private final Consumer<Map<K, Boolean>> writer;
+    private final ToLongFunction<K> ownerOf;
+    private final Map<K, Boolean> pending = new LinkedHashMap<>();
+    private final Map<Long, Integer> pendingByOwner = new HashMap<>();
+    // не synchronized: writer ходит в базу, а монитор закрепил бы виртуальный поток за несущим
+    private final ReentrantLock lock = new ReentrantLock();
+    // пачки пишутся строго по очереди, иначе более старая могла бы зафиксироваться после новой
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public WriteBehindBuffer(Consumer<Map<K, Boolean>> writer, ToLongFunction<K> ownerOf) {
+        this.writer = writer;
+        this.ownerOf = ownerOf;
+    }
+
+    // добавление действия, возвращает число ключей, ожидающих записи
+    public int put(K key, boolean added) {
+        lock.lock();
+        try {
+            Boolean previous = pending.get(key);
+            if (previous == null) {
+                pending.put(key, added);
+                pendingByOwner.merge(ownerOf.applyAsLong(key), 1, Integer::sum);
+            } else if (previous != added) {
+                pending.remove(key);
+                release(key);
+            }
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // есть ли у владельца изменения, которых ещё нет в базе
+    public boolean hasPending(long owner) {
+        lock.lock();
+        try {
+            return pendingByOwner.containsKey(owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // запись накопленного, возвращает число записанных ключей
+    public int flush() {
+        flushLock.lock();
+        try {
+            Map<K, Boolean> batch;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.accept(batch);
+            } catch (RuntimeException ex) {
+                requeue(batch);
+                throw ex;
+            }
+            lock.lock();
+            try {
+                batch.keySet().forEach(this::release);
+            } finally {
+                lock.unlock();
+            }
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // возврат незаписанной пачки: новое противоположное действие по ключу гасит старое
+    private void requeue(Map<K, Boolean> batch) {
+        lock.lock();
+        try {
+            Map<K, Boolean> newer = new LinkedHashMap<>(pending);
+            pending.clear();
+            batch.forEach((key, added) -> {
+                Boolean next = newer.get(key);
+                if (next == null) {
+                    pending.put(key, added);
+                } else {
+                    newer.remove(key);
+                    release(key);
+                    release(key);
+                }
+            });
+            pending.putAll(newer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(K key) {
+        pendingByOwner.computeIfPresent(ownerOf.applyAsLong(key), (owner, count) -> count > 1 ? count - 1 : null);
+    }
+}
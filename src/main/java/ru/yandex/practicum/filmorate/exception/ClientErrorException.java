@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.exception;
+
+/**
+ * Ошибка в запросе клиента (4xx). Исключения без стека: они сообщают об ошибке клиента, а не сервера,
+ * и на каждый такой ответ не заполняется трассировка.
+ */
+public abstract class ClientErrorException extends RuntimeException {
+    protected ClientErrorException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -4,7 +4,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(HttpStatus.BAD_REQUEST)
-public class GenreNotFoundException extends RuntimeException {
+public class GenreNotFoundException extends ClientErrorException {
     public GenreNotFoundException(String message) {
         super(message);
     }
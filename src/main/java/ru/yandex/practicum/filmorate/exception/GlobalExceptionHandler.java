@@ -34,7 +34,8 @@ public class GlobalExceptionHandler {
 
     @ExceptionHandler(NotFoundException.class)
     public ResponseEntity<ErrorResponse> handleNotFoundException(NotFoundException ex) {
-        log.error("Ошибка: {}", ex.getMessage());
+        // ошибка клиента: при переборе несуществующих id уровень error засорял бы журнал
+        log.debug("Не найдено: {}", ex.getMessage());
         return buildResponseEntity(new ErrorResponse("Not Found", ex.getMessage()), HttpStatus.NOT_FOUND);
     }
 
@@ -4,7 +4,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(HttpStatus.BAD_REQUEST)
-public class MpaNotFoundException extends RuntimeException {
+public class MpaNotFoundException extends ClientErrorException {
     public MpaNotFoundException(String message) {
         super(message);
     }
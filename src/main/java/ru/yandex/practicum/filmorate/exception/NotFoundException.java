@@ -1,11 +1,10 @@
 package ru.yandex.practicum.filmorate.exception;
 
-import lombok.extern.slf4j.Slf4j;
-
-@Slf4j
-public class NotFoundException extends RuntimeException {
+/**
+ * Запрошенный объект не найден, отвечается 404.
+ */
+public class NotFoundException extends ClientErrorException {
     public NotFoundException(String message) {
         super(message);
-        log.error("Ошибка : {}", message);
     }
 }
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+/**
+ * Счётчик SQL-запросов, выполненных текущим потоком в рамках одного HTTP-запроса.
+ */
+final class SqlStatementCounter {
+
+    private static final ThreadLocal<int[]> COUNTER = new ThreadLocal<>();
+
+    private SqlStatementCounter() {
+    }
+
+    static void start() {
+        COUNTER.set(new int[1]);
+    }
+
+    // запросы вне HTTP-запроса (загрузка кэшей, фоновые задачи) не учитываются
+    static void increment() {
+        int[] counter = COUNTER.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+    }
+
+    static int stop() {
+        int[] counter = COUNTER.get();
+        COUNTER.remove();
+        return counter != null ? counter[0] : 0;
+    }
+}
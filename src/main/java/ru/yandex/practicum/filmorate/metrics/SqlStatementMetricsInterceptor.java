@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Записывает число SQL-запросов, выполненных за HTTP-запрос, с разбивкой по маршруту.
+ * Рост значения на маршруте без изменения входных данных означает появление N+1.
+ */
+class SqlStatementMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    static final String METRIC_NAME = "filmorate.http.sql.statements";
+
+    private final MeterRegistry meterRegistry;
+
+    SqlStatementMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlStatementCounter.start();
+        return true;
+    }
+
+    // для потоковых ответов учитываются только запросы, выполненные до начала асинхронной выдачи
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        SqlStatementCounter.stop();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        int statements = SqlStatementCounter.stop();
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder(METRIC_NAME)
+                .description("Количество SQL-запросов за один HTTP-запрос")
+                .baseUnit("statements")
+                .serviceLevelObjectives(1, 2, 5, 10, 50, 100)
+                .tag("method", request.getMethod())
+                .tag("uri", uri != null ? uri.toString() : "UNKNOWN")
+                .register(meterRegistry)
+                .record(statements);
+    }
+}
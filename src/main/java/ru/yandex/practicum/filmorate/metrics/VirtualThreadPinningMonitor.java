@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * В режиме виртуальных потоков следит за закреплением (pinning) виртуального потока за несущим:
+ * блокирующий вызов внутри synchronized или нативного кадра занимает несущий поток целиком.
+ * Каждое такое событие JFR увеличивает счётчик и пишется в лог с верхним кадром стека.
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    // короткие закрепления (захват свободного монитора) не интересны
+    private static final Duration THRESHOLD = Duration.ofMillis(20);
+
+    private final Counter pinnedCounter;
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        this.pinnedCounter = Counter.builder("filmorate.virtual.threads.pinned")
+                .description("Количество закреплений виртуальных потоков дольше " + THRESHOLD.toMillis() + " мс")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(THRESHOLD).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("Включено отслеживание закрепления виртуальных потоков");
+    }
+
+    @PreDestroy
+    public void stop() {
+        stream.close();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        RecordedFrame frame = event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()
+                ? event.getStackTrace().getFrames().get(0) : null;
+        log.warn("Виртуальный поток закреплён за несущим на {} мс: {}", event.getDuration().toMillis(),
+                frame != null ? frame.getMethod().getType().getName() + "." + frame.getMethod().getName() : "?");
+    }
+}
@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.time.LocalDate;
 import java.util.Set;
@@ -41,6 +43,11 @@ public class Film {
     @JsonProperty("genres")
     private Set<Genre> genreIds;
 
+    // версия строки хранилища для ETag, в JSON не выводится
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
+
     public Film(Long id, String name, String description, LocalDate releaseDate, int duration, MpaRating mpaRatingId,
                 Set<Genre> genreIds) {
         this.id = id;
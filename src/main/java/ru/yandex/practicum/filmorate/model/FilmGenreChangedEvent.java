@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Событие добавления (added = true) или удаления жанра фильма: хранилища поправляют рейтинги по жанрам.
+ */
+public record FilmGenreChangedEvent(Long filmId, Long genreId, boolean added) {
+}
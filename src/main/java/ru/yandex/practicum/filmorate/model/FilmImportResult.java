@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Результат импорта одного фильма из пакетной загрузки.
+ */
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FilmImportResult {
+    private int index;        // порядковый номер фильма во входных данных, с нуля
+    private Status status;
+    private Long id;          // id созданного фильма
+    private String error;     // причина отказа
+
+    public static FilmImportResult created(int index, Long id) {
+        return new FilmImportResult(index, Status.CREATED, id, null);
+    }
+
+    public static FilmImportResult rejected(int index, String error) {
+        return new FilmImportResult(index, Status.REJECTED, null, error);
+    }
+
+    public enum Status {
+        CREATED,
+        REJECTED
+    }
+}
@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Событие добавления (added = true) или снятия лайка. Хранилища публикуют его под блокировкой лайков фильма,
+ * поэтому слушатели получают изменения одного фильма в том же порядке, что и хранилище.
+ */
+public record FilmLikeChangedEvent(Long filmId, Long userId, boolean added) {
+}
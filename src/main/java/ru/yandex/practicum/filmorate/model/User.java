@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Past;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.time.LocalDate;
 import java.util.Set;
@@ -29,6 +31,11 @@ public class User {
 
     private Set<Long> friendIds;
 
+    // версия строки хранилища для ETag, в JSON не выводится
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
+
     public User(Long id, String email, String login, String name, LocalDate birthday, Set<Long> friendIds) {
         this.id = id;
         this.email = email;
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Событие удаления пользователя: хранилища, держащие данные пользователя в памяти, сбрасывают их.
+ */
+public record UserDeletedEvent(Long userId) {
+}
@@ -1,15 +1,35 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.MpaRatingDao;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.dao.FilmStorage;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -17,15 +37,33 @@ import java.util.stream.Collectors;
 @Slf4j
 public class FilmService {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final MpaRatingDao mpaRatingDao;
+    private final GenreDao genreDao;
+    private final Validator validator;
+    private final RecommendationService recommendationService;
+    private final ObjectMapper objectMapper;
 
-    private final Map<Long, Set<Long>> likes = new HashMap<>();
+    // количество фильмов в одной пакетной вставке при импорте
+    private final int importChunkSize;
 
     @Autowired
-    public FilmService(@Qualifier("FilmDbStorage") FilmStorage filmStorage, @Qualifier("userDbStorage") UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage,
+                       MpaRatingDao mpaRatingDao, GenreDao genreDao, Validator validator,
+                       RecommendationService recommendationService, ObjectMapper objectMapper,
+                       @Value("${filmorate.films.import.chunk-size:1000}") int importChunkSize) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.mpaRatingDao = mpaRatingDao;
+        this.genreDao = genreDao;
+        this.validator = validator;
+        this.recommendationService = recommendationService;
+        this.objectMapper = objectMapper;
+        this.importChunkSize = importChunkSize;
     }
 
     // получение всех фильмов
@@ -34,6 +72,22 @@ public class FilmService {
         return filmStorage.findAll();
     }
 
+    // постраничное получение фильмов по id (keyset)
+    public List<Film> findPage(Long afterId, Integer limit) {
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        log.debug("Получение страницы фильмов после id {} размером {}", afterId, pageSize);
+        return filmStorage.findPage(afterId != null ? afterId : 0, pageSize);
+    }
+
+    // потоковое получение всех фильмов
+    public void streamAll(Consumer<Film> consumer) {
+        log.debug("Потоковое получение всех фильмов");
+        filmStorage.streamAll(consumer);
+    }
+
     // добавление фильма
     public Film create(Film film) {
         log.debug("Создание фильма");
@@ -41,6 +95,83 @@ public class FilmService {
         return createdFilm;
     }
 
+    // пакетный импорт фильмов из элементов JSON: элементы, которые не преобразуются в фильм или не проходят
+    // проверку, отклоняются по отдельности, остальные вставляются порциями
+    public List<FilmImportResult> importFilms(Iterator<JsonNode> items) {
+        log.info("Пакетный импорт фильмов, размер порции {}", importChunkSize);
+        List<FilmImportResult> results = new ArrayList<>();
+        List<Film> chunk = new ArrayList<>(importChunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(importChunkSize);
+        int index = 0;
+        while (items.hasNext()) {
+            JsonNode item = items.next();
+            Film film = null;
+            String error;
+            try {
+                film = item.isNull() ? null : objectMapper.treeToValue(item, Film.class);
+                error = validateForImport(film);
+            } catch (JsonProcessingException ex) {
+                error = "Некорректный элемент: " + ex.getOriginalMessage();
+            }
+            if (error != null) {
+                results.add(FilmImportResult.rejected(index, error));
+            } else {
+                chunk.add(film);
+                chunkIndexes.add(index);
+                if (chunk.size() >= importChunkSize) {
+                    importChunk(chunk, chunkIndexes, results);
+                }
+            }
+            index++;
+        }
+        importChunk(chunk, chunkIndexes, results);
+        results.sort(Comparator.comparingInt(FilmImportResult::getIndex));
+        log.info("Импорт завершён: получено {}, создано {}", index,
+                results.stream().filter(result -> result.getStatus() == FilmImportResult.Status.CREATED).count());
+        return results;
+    }
+
+    private void importChunk(List<Film> chunk, List<Integer> chunkIndexes, List<FilmImportResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        filmStorage.createAll(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+            results.add(FilmImportResult.created(chunkIndexes.get(i), chunk.get(i).getId()));
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    // проверка фильма перед импортом, возвращает описание ошибки или null
+    private String validateForImport(Film film) {
+        if (film == null) {
+            return "Пустой элемент";
+        }
+        // release_date в базе допускает NULL, но фильм без даты выпуска не читается обратно
+        if (film.getReleaseDate() == null) {
+            return "Дата релиза не может быть пустой";
+        }
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        if (film.getMpaRatingId() != null && !mpaRatingDao.existsById(film.getMpaRatingId().getId())) {
+            return "MPA rating не найден";
+        }
+        if (film.getGenreIds() != null) {
+            for (Genre genre : film.getGenreIds()) {
+                if (!genreDao.existsById(genre.getId())) {
+                    return "Жанр не найден";
+                }
+            }
+        }
+        return null;
+    }
+
     // обновление фильма
     public Film update(Film newFilm) {
         log.info("Обновление фильма: {}", newFilm);
@@ -53,6 +184,8 @@ public class FilmService {
         boolean result = filmStorage.delete(filmId);
         if (!result) {
             log.warn("Не удалось удалить фильм с id: {}", filmId);
+        } else {
+            recommendationService.filmDeleted(filmId);
         }
         return result;
     }
@@ -64,44 +197,80 @@ public class FilmService {
                 .orElseThrow(() -> new NotFoundException("Фильм с id = " + id + " не найден"));
     }
 
+    // версия фильма для проверки If-None-Match, сам фильм не загружается
+    public Optional<Long> findVersion(long id) {
+        return filmStorage.findVersion(id);
+    }
+
     // добавление лайка
     public boolean addLike(Long filmId, Long userId) {
         log.info("Добавление лайка от пользователя {} фильму {}", userId, filmId);
-        filmStorage.getFilmById(filmId)
-                .orElseThrow(() -> new NotFoundException("Фильм с id = " + filmId + " не найден"));
-        userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id = " + userId + " не найден"));
-        return likes.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
+        checkFilmAndUserExist(filmId, userId);
+        return filmStorage.addLike(filmId, userId);
     }
 
     // удаление лайка
     public boolean removeLike(Long filmId, Long userId) {
         log.info("Удаление лайка от пользователя {} фильму {}", userId, filmId);
-        filmStorage.getFilmById(filmId)
-                .orElseThrow(() -> new NotFoundException("Фильм с id = " + filmId + " не найден"));
-        userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id = " + userId + " не найден"));
-        if (likes.containsKey(filmId)) {
-            boolean removed = likes.get(filmId).remove(userId);
-            if (!removed) {
-                log.warn("Попытка удалить лайк от пользователя {} фильму {}, но лайк не найден", userId, filmId);
-            }
-            return removed;
-        } else {
+        checkFilmAndUserExist(filmId, userId);
+        boolean removed = filmStorage.removeLike(filmId, userId);
+        if (!removed) {
             log.warn("Попытка удалить лайк от пользователя {} фильму {}, но лайк не найден", userId, filmId);
-            return false;
+        }
+        return removed;
+    }
+
+    // проверка без загрузки жанров фильма и друзей пользователя
+    private void checkFilmAndUserExist(Long filmId, Long userId) {
+        if (!filmStorage.exists(filmId)) {
+            throw new NotFoundException("Фильм с id = " + filmId + " не найден");
+        }
+        if (!userStorage.exists(userId)) {
+            throw new NotFoundException("Пользователь с id = " + userId + " не найден");
         }
     }
 
     // топ фильмов
     public List<Film> getTopFilms(int count) {
         log.info("Получение топ {} фильмов", count);
-        return likes.entrySet().stream()
-                .sorted((e1, e2) -> Integer.compare(e2.getValue().size(), e1.getValue().size()))
-                .limit(count)
-                .map(entry -> filmStorage.getFilmById(entry.getKey()).orElse(null))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        return filmStorage.getTopFilms(count);
+    }
+
+    // поиск фильмов: by - поля через запятую (title, description), без by - по обоим
+    public List<Film> search(String query, String by, Integer limit) {
+        if (FilmSearchIndex.tokenize(query).isEmpty()) {
+            throw new ValidationException("Поисковый запрос должен содержать хотя бы одно слово");
+        }
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        Set<FilmSearchIndex.Field> fields = EnumSet.noneOf(FilmSearchIndex.Field.class);
+        if (by == null || by.isBlank()) {
+            fields = EnumSet.allOf(FilmSearchIndex.Field.class);
+        } else {
+            for (String field : by.split(",")) {
+                switch (field.trim().toLowerCase(Locale.ROOT)) {
+                    case "title" -> fields.add(FilmSearchIndex.Field.TITLE);
+                    case "description" -> fields.add(FilmSearchIndex.Field.DESCRIPTION);
+                    default -> throw new ValidationException("Неизвестное поле поиска: " + field.trim());
+                }
+            }
+        }
+        log.info("Поиск фильмов по запросу '{}' в полях {}", query, fields);
+        return filmStorage.search(query, fields, pageSize);
+    }
+
+    // топ фильмов с отбором по жанру и году выпуска, без отбора - общий топ
+    public List<Film> getTopFilms(int count, Long genreId, Integer year) {
+        if (genreId == null && year == null) {
+            return getTopFilms(count);
+        }
+        if (genreId != null && !genreDao.existsById(genreId)) {
+            throw new NotFoundException("Жанр с id = " + genreId + " не найден");
+        }
+        log.info("Получение топ {} фильмов жанра {} за {} год", count, genreId, year);
+        return filmStorage.getTopFilms(count, genreId, year);
     }
 
 }
@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.model.FilmGenreChangedEvent;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.List;
@@ -12,10 +14,12 @@ import java.util.Optional;
 public class GenreService {
 
     private final GenreDao genreDao;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public GenreService(GenreDao genreDao) {
+    public GenreService(GenreDao genreDao, ApplicationEventPublisher eventPublisher) {
         this.genreDao = genreDao;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<Genre> findAll() {
@@ -27,10 +31,14 @@ public class GenreService {
     }
 
     public void addGenreToFilm(Long filmId, Long genreId) {
-        genreDao.addGenreToFilm(filmId, genreId);
+        if (genreDao.addGenreToFilm(filmId, genreId)) {
+            eventPublisher.publishEvent(new FilmGenreChangedEvent(filmId, genreId, true));
+        }
     }
 
     public void removeGenreFromFilm(Long filmId, Long genreId) {
-        genreDao.removeGenreFromFilm(filmId, genreId);
+        if (genreDao.removeGenreFromFilm(filmId, genreId)) {
+            eventPublisher.publishEvent(new FilmGenreChangedEvent(filmId, genreId, false));
+        }
     }
 }
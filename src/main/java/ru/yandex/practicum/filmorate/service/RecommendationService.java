@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.index.CoLikeIndex;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.model.UserDeletedEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Рекомендации фильмов по совместным лайкам (item-item). Индекс строится из film_likes при запуске,
+ * события об изменении лайков из хранилища поправляют его сразу, а строки соседей затронутых фильмов
+ * пересчитываются в фоне раз в filmorate.recommendations.refresh-interval-ms.
+ */
+@Service
+@Slf4j
+public class RecommendationService {
+
+    private static final int DEFAULT_SIZE = 10;
+    private static final int MAX_SIZE = 100;
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final CoLikeIndex coLikes;
+
+    public RecommendationService(FilmStorage filmStorage, UserStorage userStorage,
+                                 @Value("${filmorate.recommendations.neighbours:50}") int neighbours) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.coLikes = new CoLikeIndex(neighbours);
+    }
+
+    // полное построение индекса по таблице лайков
+    @PostConstruct
+    public void rebuild() {
+        long start = System.nanoTime();
+        Map<Long, long[]> likers = new HashMap<>();
+        filmStorage.streamLikes(likers::put);
+        coLikes.load(likers);
+        log.info("Индекс рекомендаций построен: {} фильмов с лайками за {} мс", likers.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // пересчёт соседей фильмов, чьи лайки изменились с прошлого раза
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.refresh-interval-ms:5000}")
+    public void refresh() {
+        int refreshed = coLikes.refresh();
+        if (refreshed > 0) {
+            log.debug("Пересчитаны соседи {} фильмов", refreshed);
+        }
+    }
+
+    // вызывается синхронно под блокировкой лайков фильма в хранилище
+    @EventListener
+    public void onLikeChanged(FilmLikeChangedEvent event) {
+        if (event.added()) {
+            coLikes.addLike(event.filmId(), event.userId());
+        } else {
+            coLikes.removeLike(event.filmId(), event.userId());
+        }
+    }
+
+    public void filmDeleted(long filmId) {
+        coLikes.removeFilm(filmId);
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        coLikes.removeUser(event.userId());
+    }
+
+    // фильмы, которые лайкают вместе с фильмами пользователя, кроме уже лайкнутых им
+    public List<Film> getRecommendations(Long userId, Integer limit) {
+        int size = limit != null ? limit : DEFAULT_SIZE;
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до " + MAX_SIZE);
+        }
+        if (!userStorage.exists(userId)) {
+            throw new NotFoundException("Пользователь с id = " + userId + " не найден");
+        }
+        log.debug("Получение {} рекомендаций для пользователя {}", size, userId);
+        return filmStorage.findByIds(coLikes.recommend(userId, size));
+    }
+}
@@ -1,23 +1,31 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserDeletedEvent;
 import ru.yandex.practicum.filmorate.dao.UserStorage;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class UserService {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SUGGESTIONS_SIZE = 10;
+
     private final UserStorage userStorage;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(UserStorage userStorage, ApplicationEventPublisher eventPublisher) {
         this.userStorage = userStorage;
+        this.eventPublisher = eventPublisher;
     }
 
     // получение списка всех пользователей
@@ -26,6 +34,22 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    // постраничное получение пользователей по id (keyset)
+    public List<User> findPage(Long afterId, Integer limit) {
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        log.debug("Получение страницы пользователей после id {} размером {}", afterId, pageSize);
+        return userStorage.findPage(afterId != null ? afterId : 0, pageSize);
+    }
+
+    // потоковое получение всех пользователей
+    public void streamAll(Consumer<User> consumer) {
+        log.debug("Потоковое получение всех пользователей");
+        userStorage.streamAll(consumer);
+    }
+
     // создание пользователя
     public User addUser(User user) {
         log.info("Создание нового пользователя: {}", user);
@@ -41,7 +65,11 @@ public class UserService {
     // удаление пользователя
     public boolean delete(Long userId) {
         log.info("Удаление пользователя с id: {}", userId);
-        return userStorage.delete(userId);
+        boolean deleted = userStorage.delete(userId);
+        if (deleted) {
+            eventPublisher.publishEvent(new UserDeletedEvent(userId));
+        }
+        return deleted;
     }
 
     // получение пользователя по id
@@ -51,6 +79,11 @@ public class UserService {
                 .orElseThrow(() -> new NotFoundException("Пользователь с id = " + id + " не найден"));
     }
 
+    // версия пользователя для проверки If-None-Match, сам пользователь не загружается
+    public Optional<Long> findVersion(Long id) {
+        return userStorage.findVersion(id);
+    }
+
     // добавление друга
     public void addFriend(Long userId, Long friendId) {
         log.info("Пользователь с id = {} добавляет в друзья пользователя с id = {}", userId, friendId);
@@ -63,19 +96,51 @@ public class UserService {
         userStorage.removeFriend(userId, friendId);
     }
 
-    public Set<User> getFriends(Long userId) {
-        Set<Long> friendIds = userStorage.getFriends(userId);
-        return friendIds.stream()
-                .map(this::getUserById)
-                .collect(Collectors.toSet());
+    // друзья пользователя одним запросом; без limit возвращаются все друзья,
+    // friendIds самих друзей загружаются только по запросу
+    public List<User> getFriends(Long userId, Long afterId, Integer limit, boolean withFriendIds) {
+        log.debug("Получение друзей пользователя {} после id {} размером {}", userId, afterId, limit);
+        List<User> friends = userStorage.findFriends(userId, afterId != null ? afterId : 0, friendsPageSize(limit));
+        if (withFriendIds) {
+            userStorage.loadFriendIds(friends);
+        }
+        return friends;
+    }
+
+    // общие друзья одним запросом, параметры как у getFriends
+    public List<User> getCommonFriends(Long userId, Long otherUserId, Long afterId, Integer limit,
+                                       boolean withFriendIds) {
+        log.debug("Получение общих друзей пользователей {} и {}", userId, otherUserId);
+        List<User> commonFriends = userStorage.findCommonFriends(userId, otherUserId,
+                afterId != null ? afterId : 0, friendsPageSize(limit));
+        if (withFriendIds) {
+            userStorage.loadFriendIds(commonFriends);
+        }
+        return commonFriends;
+    }
+
+    // рекомендованные друзья: друзья друзей по убыванию числа общих друзей
+    public List<User> getFriendSuggestions(Long userId, Integer limit, boolean withFriendIds) {
+        int size = limit != null ? limit : DEFAULT_SUGGESTIONS_SIZE;
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        log.debug("Получение рекомендаций друзей для пользователя {} размером {}", userId, size);
+        List<User> suggestions = userStorage.findFriendSuggestions(userId, size);
+        if (withFriendIds) {
+            userStorage.loadFriendIds(suggestions);
+        }
+        return suggestions;
     }
 
-    public Set<User> getCommonFriends(Long userId, Long otherUserId) {
-        Set<Long> commonFriendIds = userStorage.getCommonFriends(userId, otherUserId);
-        return commonFriendIds.stream()
-                .map(this::getUserById)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+    private int friendsPageSize(Integer limit) {
+        if (limit == null) {
+            return Integer.MAX_VALUE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        return limit;
     }
 
 }
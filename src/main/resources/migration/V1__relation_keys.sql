@@ -0,0 +1,22 @@
+-- Уникальность связей и индексы для чтения друзей, лайков и жанров.
+-- Перед созданием уникальных индексов удаляются дубликаты, оставшиеся от прежних версий.
+DELETE FROM friendship f
+WHERE EXISTS (SELECT 1 FROM friendship d WHERE d.user_id = f.user_id AND d.friend_id = f.friend_id AND d.id < f.id);
+
+DELETE FROM film_likes f
+WHERE EXISTS (SELECT 1 FROM film_likes d WHERE d.film_id = f.film_id AND d.user_id = f.user_id AND d.id < f.id);
+
+DELETE FROM film_genre f
+WHERE EXISTS (SELECT 1 FROM film_genre d WHERE d.film_id = f.film_id AND d.genre_id = f.genre_id AND d.id < f.id);
+
+-- список друзей и общие друзья: поиск по user_id с friend_id в том же индексе
+CREATE UNIQUE INDEX IF NOT EXISTS uq_friendship_user_friend ON friendship (user_id, friend_id);
+CREATE INDEX IF NOT EXISTS idx_friendship_friend_user ON friendship (friend_id, user_id);
+
+-- лайки фильма и проверка лайка пользователя
+CREATE UNIQUE INDEX IF NOT EXISTS uq_film_likes_film_user ON film_likes (film_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_film_likes_user_film ON film_likes (user_id, film_id);
+
+-- жанры фильма и фильмы жанра
+CREATE UNIQUE INDEX IF NOT EXISTS uq_film_genre_film_genre ON film_genre (film_id, genre_id);
+CREATE INDEX IF NOT EXISTS idx_film_genre_genre_film ON film_genre (genre_id, film_id);
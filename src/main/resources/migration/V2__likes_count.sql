@@ -0,0 +1,3 @@
+-- Заполнение films.likes_count в базах, созданных до появления столбца: ALTER TABLE добавляет его со значением 0,
+-- а рейтинг популярных фильмов прогревается из этого столбца.
+UPDATE films SET likes_count = (SELECT COUNT(*) FROM film_likes l WHERE l.film_id = films.id);
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class ConditionalGetTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void testUserETagChangesWithFriends() {
+        User user = userService.addUser(new User(null, "etag" + System.nanoTime() + "@example.com",
+                "etag", "ETag", LocalDate.of(1990, 1, 1), null));
+        User friend = userService.addUser(new User(null, "etag" + System.nanoTime() + "@example.com",
+                "friend", "Friend", LocalDate.of(1991, 1, 1), null));
+
+        ResponseEntity<String> first = get("/users/" + user.getId(), null);
+        String etag = first.getHeaders().getETag();
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(etag).isNotNull();
+        assertThat(get("/users/" + user.getId(), etag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        userService.addFriend(user.getId(), friend.getId());
+        ResponseEntity<String> changed = get("/users/" + user.getId(), etag);
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(changed.getBody()).contains(String.valueOf(friend.getId()));
+    }
+
+    @Test
+    void testDictionariesAreCacheable() throws Exception {
+        ResponseEntity<String> genres = get("/genres", null);
+        assertThat(genres.getHeaders().getCacheControl()).contains("max-age");
+        // ETag - начало SHA-256 от тела ответа
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(genres.getBody().getBytes(StandardCharsets.UTF_8));
+        assertThat(genres.getHeaders().getETag()).isEqualTo("\"genres-" + HexFormat.of().formatHex(hash, 0, 16) + "\"");
+        assertThat(get("/genres", genres.getHeaders().getETag()).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    private ResponseEntity<String> get(String url, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        if (etag != null) {
+            headers.setIfNoneMatch(etag);
+        }
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dao.cache.DictionaryCache;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DictionaryCacheTest {
+
+    private final List<Genre> table = new ArrayList<>(List.of(new Genre(1L, "Комедия"), new Genre(2L, "Драма")));
+    private final AtomicInteger loads = new AtomicInteger();
+    private final DictionaryCache<Genre> cache = new DictionaryCache<>(() -> {
+        loads.incrementAndGet();
+        return List.copyOf(table);
+    }, Genre::getId);
+
+    @Test
+    void testDictionaryIsLoadedOnceAndServedFromMemory() {
+        assertThat(cache.findAll()).hasSize(2);
+        assertThat(cache.findById(2L)).hasValue(new Genre(2L, "Драма"));
+        assertThat(cache.existsById(3L)).isFalse();
+        assertThat(cache.findById(null)).isEmpty();
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.misses()).isEqualTo(1);
+        assertThat(cache.hits()).isEqualTo(2);
+    }
+
+    @Test
+    void testInvalidateReloadsOnNextAccess() {
+        assertThat(cache.existsById(3L)).isFalse();
+        table.add(new Genre(3L, "Мультфильм"));
+        // до сброса изменения таблицы не видны
+        assertThat(cache.existsById(3L)).isFalse();
+
+        cache.invalidate();
+        assertThat(loads).hasValue(1);
+        assertThat(cache.findById(3L)).hasValue(new Genre(3L, "Мультфильм"));
+        assertThat(cache.findAll()).hasSize(3);
+
+        assertThat(loads).hasValue(2);
+        assertThat(cache.misses()).isEqualTo(2);
+        assertThat(cache.hits()).isEqualTo(2);
+    }
+
+    @Test
+    void testConcurrentFirstAccessLoadsOnce() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Genre>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.findAll();
+                }));
+            }
+            start.countDown();
+            for (Future<List<Genre>> result : results) {
+                assertThat(result.get()).hasSize(2);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(cache.misses()).isEqualTo(1);
+        assertThat(cache.hits()).isEqualTo(threads - 1);
+    }
+}
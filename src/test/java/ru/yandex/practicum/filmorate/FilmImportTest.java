@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// маленькая порция, чтобы проверять её границы на нескольких фильмах
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "filmorate.films.import.chunk-size=" + FilmImportTest.CHUNK_SIZE)
+@ActiveProfiles("test")
+class FilmImportTest {
+
+    static final int CHUNK_SIZE = 3;
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void testJsonArrayIsImported() throws Exception {
+        JsonNode results = importFilms(MediaType.APPLICATION_JSON_VALUE,
+                "[" + film("Массив 1") + "," + film("Массив 2") + "]");
+
+        assertCreated(results, List.of("Массив 1", "Массив 2"));
+    }
+
+    @Test
+    void testNdjsonIsImported() throws Exception {
+        JsonNode results = importFilms(NDJSON, film("Строка 1") + "\n" + film("Строка 2") + "\n");
+
+        assertCreated(results, List.of("Строка 1", "Строка 2"));
+    }
+
+    @Test
+    void testInvalidFilmsAreRejectedWithoutAbortingBatch() throws Exception {
+        String blankName = film("");
+        String unknownMpa = film("Неизвестный рейтинг").replace("\"mpa\":{\"id\":1}", "\"mpa\":{\"id\":999}");
+        JsonNode results = importFilms(MediaType.APPLICATION_JSON_VALUE,
+                "[" + film("До ошибок") + "," + blankName + ",null," + unknownMpa + "," + film("После ошибок") + "]");
+
+        assertThat(results).hasSize(5);
+        assertThat(results).extracting(result -> result.get("index").asInt()).containsExactly(0, 1, 2, 3, 4);
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("CREATED", "REJECTED", "REJECTED", "REJECTED", "CREATED");
+        assertThat(results.get(1).get("error").asText()).contains("Название не может быть пустым");
+        assertThat(results.get(3).get("error").asText()).isEqualTo("MPA rating не найден");
+        assertThat(filmStorage.getFilmById(results.get(0).get("id").asLong())).get()
+                .extracting(Film::getName).isEqualTo("До ошибок");
+        assertThat(filmStorage.getFilmById(results.get(4).get("id").asLong())).get()
+                .extracting(Film::getName).isEqualTo("После ошибок");
+    }
+
+    // каждая полная порция и остаток пишутся одной пакетной вставкой, ни один фильм не теряется и не повторяется
+    @ParameterizedTest
+    @ValueSource(ints = {CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1})
+    void testChunkBoundaries(int count) throws Exception {
+        List<String> names = IntStream.rangeClosed(1, count).mapToObj(i -> "Порция " + count + "-" + i).toList();
+        double batches = createAllCalls();
+
+        JsonNode results = importFilms(NDJSON, names.stream().map(this::film).collect(Collectors.joining("\n")));
+
+        assertCreated(results, names);
+        assertThat(createAllCalls() - batches).isEqualTo((count + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    // элемент, который не преобразуется в фильм, отклоняется отдельно и не прерывает пакет
+    @Test
+    void testUnconvertibleFilmIsRejectedWithoutAbortingBatch() throws Exception {
+        String wrongType = film("Долгий фильм").replace("\"duration\":90", "\"duration\":\"долго\"");
+        JsonNode results = importFilms(MediaType.APPLICATION_JSON_VALUE,
+                "[" + film("До долгого") + "," + wrongType + "," + film("После долгого") + "]");
+
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("CREATED", "REJECTED", "CREATED");
+        assertThat(results.get(1).get("index").asInt()).isEqualTo(1);
+        assertThat(results.get(1).get("error").asText()).startsWith("Некорректный элемент");
+    }
+
+    // фильм без даты выпуска не попадает в базу и не ломает чтение списка фильмов
+    @Test
+    void testFilmWithoutReleaseDateIsRejected() throws Exception {
+        String noReleaseDate = film("Без даты").replace("\"releaseDate\":\"2000-01-01\",", "");
+        JsonNode results = importFilms(MediaType.APPLICATION_JSON_VALUE, "[" + noReleaseDate + "]");
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).get("status").asText()).isEqualTo("REJECTED");
+        assertThat(results.get(0).get("error").asText()).isEqualTo("Дата релиза не может быть пустой");
+        ResponseEntity<String> films = restTemplate.getForEntity("/films", String.class);
+        assertThat(films.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(objectMapper.readTree(films.getBody())).extracting(film -> film.get("name").asText())
+                .doesNotContain("Без даты");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"[{\"name\": \"Без конца\"", "не json"})
+    void testMalformedJsonIsBadRequest(String body) {
+        assertThat(post(MediaType.APPLICATION_JSON_VALUE, body).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void testMalformedNdjsonLineIsBadRequest() {
+        String body = film("Первая строка") + "\n{\"name\": ";
+
+        assertThat(post(NDJSON, body).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private void assertCreated(JsonNode results, List<String> names) {
+        assertThat(results).hasSize(names.size());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            JsonNode result = results.get(i);
+            assertThat(result.get("index").asInt()).isEqualTo(i);
+            assertThat(result.get("status").asText()).isEqualTo("CREATED");
+            long id = result.get("id").asLong();
+            assertThat(filmStorage.getFilmById(id)).get().extracting(Film::getName).isEqualTo(names.get(i));
+            ids.add(id);
+        }
+        assertThat(ids).doesNotHaveDuplicates().isSorted();
+    }
+
+    private double createAllCalls() {
+        Timer timer = meterRegistry.find("filmorate.dao").tag("method", "createAll").timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private JsonNode importFilms(String contentType, String body) throws Exception {
+        ResponseEntity<String> response = post(contentType, body);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return objectMapper.readTree(response.getBody());
+    }
+
+    private ResponseEntity<String> post(String contentType, String body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(contentType));
+        return restTemplate.postForEntity("/films/bulk", new HttpEntity<>(body, headers), String.class);
+    }
+
+    private String film(String name) {
+        return "{\"name\":\"" + name + "\",\"description\":\"Импорт\",\"releaseDate\":\"2000-01-01\","
+                + "\"duration\":90,\"mpa\":{\"id\":1}}";
+    }
+}
@@ -0,0 +1,152 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class FilmLikesConcurrencyTest {
+    private static final int USERS = 40;
+    private static final int THREADS = 8;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private UserStorage userStorage;
+
+    @Test
+    void testConcurrentLikesKeepCountsConsistent() throws Exception {
+        Film film = filmService.create(new Film(null, "Stress film", "Фильм для нагрузочного теста",
+                LocalDate.of(2000, 1, 1), 90, new MpaRating(1L, "G"), new HashSet<>()));
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = userService.addUser(new User(null, "stress" + System.nanoTime() + "@example.com",
+                    "stress" + i, "Stress " + i, LocalDate.of(1990, 1, 1), null));
+            userIds.add(user.getId());
+        }
+
+        // каждый поток ставит лайки от всех пользователей, затем снимает лайки у чётных
+        runConcurrently(thread -> {
+            for (Long userId : userIds) {
+                restTemplate.put("/films/" + film.getId() + "/like/" + userId, null);
+            }
+        });
+        runConcurrently(thread -> {
+            for (int i = 0; i < USERS; i += 2) {
+                restTemplate.delete("/films/" + film.getId() + "/like/" + userIds.get(i));
+            }
+        });
+
+        int expectedLikes = USERS / 2;
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_likes WHERE film_id = ?",
+                Integer.class, film.getId());
+        Long likesCount = jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?",
+                Long.class, film.getId());
+        assertThat(rows).isEqualTo(expectedLikes);
+        assertThat(likesCount).isEqualTo(expectedLikes);
+        assertThat(filmService.removeLike(film.getId(), userIds.get(1))).isTrue();
+        assertThat(filmService.removeLike(film.getId(), userIds.get(1))).isFalse();
+    }
+
+    @Test
+    void testInterleavedLikesKeepRecommendationsConsistent() throws Exception {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            filmIds.add(filmService.create(new Film(null, "Co-like film " + i, "Фильм для теста рекомендаций",
+                    LocalDate.of(2000, 1, 1), 90, new MpaRating(1L, "G"), new HashSet<>())).getId());
+        }
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            User user = userService.addUser(new User(null, "colike" + System.nanoTime() + "@example.com",
+                    "colike" + i, "Co-like " + i, LocalDate.of(1990, 1, 1), null));
+            userIds.add(user.getId());
+        }
+
+        // за каждый лайк одновременно борются потоки, которые его ставят и снимают
+        for (Long filmId : filmIds) {
+            for (Long userId : userIds) {
+                runConcurrently(thread -> {
+                    for (int i = 0; i < 5; i++) {
+                        if ((thread + i) % 2 == 0) {
+                            filmService.addLike(filmId, userId);
+                        } else {
+                            filmService.removeLike(filmId, userId);
+                        }
+                    }
+                });
+            }
+        }
+
+        // индекс, построенный заново по film_likes, должен давать те же рекомендации
+        RecommendationService rebuilt = new RecommendationService(filmStorage, userStorage, 50);
+        rebuilt.rebuild();
+        for (Long userId : userIds) {
+            assertThat(recommendationService.getRecommendations(userId, 100))
+                    .extracting(Film::getId)
+                    .isEqualTo(rebuilt.getRecommendations(userId, 100).stream().map(Film::getId).toList());
+        }
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
@@ -1,15 +1,30 @@
 package ru.yandex.practicum.filmorate;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
 import ru.yandex.practicum.filmorate.dao.impl.UserDbStorage;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ResourceNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -17,6 +32,15 @@ class FilmoRateApplicationTests {
     @Autowired
     private UserDbStorage userStorage;
 
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     void testFindUserById() {
         // Предполагаем, что данные пользователя с ID 1 уже добавлены в тестовую БД
@@ -27,4 +51,122 @@ class FilmoRateApplicationTests {
                 .hasValueSatisfying(user ->
                         assertThat(user.getId()).isEqualTo(1L));
     }
+
+    @Test
+    void testUpdateWritesGenresAndReturnsPersistedFilm() {
+        Film film = filmStorage.create(new Film(null, "Update", "До", LocalDate.of(2000, 1, 1), 90,
+                new MpaRating(1L, null), new LinkedHashSet<>(List.of(new Genre(1L, null), new Genre(2L, null)))));
+        long version = filmStorage.findVersion(film.getId()).orElseThrow();
+
+        Film updated = filmStorage.update(new Film(film.getId(), "Update", "После", LocalDate.of(2001, 1, 1), 95,
+                new MpaRating(2L, null), new LinkedHashSet<>(List.of(new Genre(3L, null), new Genre(2L, null)))));
+
+        assertThat(updated.getMpaRatingId().getName()).isNotNull();
+        assertThat(updated.getGenreIds()).extracting(Genre::getId).containsExactly(2L, 3L);
+        assertThat(updated.getVersion()).isEqualTo(version + 1);
+        assertThat(filmStorage.getFilmById(film.getId())).hasValue(updated);
+
+        // без жанров в запросе жанры фильма сохраняются
+        Film withoutGenres = new Film(film.getId(), "Update", "После", LocalDate.of(2001, 1, 1), 95,
+                new MpaRating(2L, null), null);
+        assertThat(filmStorage.update(withoutGenres).getGenreIds()).extracting(Genre::getId).containsExactly(2L, 3L);
+
+        withoutGenres.setGenreIds(Set.of());
+        assertThat(filmStorage.update(withoutGenres).getGenreIds()).isEmpty();
+        assertThat(filmStorage.getFilmById(film.getId()).orElseThrow().getGenreIds()).isEmpty();
+
+        withoutGenres.setId(Long.MAX_VALUE);
+        assertThatThrownBy(() -> filmStorage.update(withoutGenres)).isInstanceOf(ResourceNotFoundException.class);
+        withoutGenres.setId(null);
+        assertThatThrownBy(() -> filmStorage.update(withoutGenres)).isInstanceOf(ValidationException.class);
+        filmStorage.delete(film.getId());
+    }
+
+    @Test
+    void testCachedUserFollowsChanges() {
+        User user = userStorage.create(new User(null, "cache" + System.nanoTime() + "@example.com", "cache",
+                "Cache", LocalDate.of(1990, 1, 1), null));
+        User friend = userStorage.create(new User(null, "cache" + System.nanoTime() + "@example.com", "friend",
+                "Friend", LocalDate.of(1990, 1, 1), null));
+        userStorage.getUserById(user.getId()).orElseThrow().setName("Изменено снаружи");
+        double hits = meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "hit")
+                .functionCounter().count();
+
+        assertThat(userStorage.getUserById(user.getId()).orElseThrow().getName()).isEqualTo("Cache");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "hit")
+                .functionCounter().count()).isGreaterThan(hits);
+
+        user.setName("Новое имя");
+        userStorage.update(user);
+        userStorage.addFriend(user.getId(), friend.getId());
+        User cached = userStorage.getUserById(user.getId()).orElseThrow();
+        assertThat(cached.getName()).isEqualTo("Новое имя");
+        assertThat(cached.getFriendIds()).containsExactly(friend.getId());
+        assertThat(cached.getVersion()).isEqualTo(userStorage.findVersion(user.getId()).orElseThrow());
+
+        userStorage.delete(user.getId());
+        assertThat(userStorage.getUserById(user.getId())).isEmpty();
+        assertThat(userStorage.exists(user.getId())).isFalse();
+        userStorage.delete(friend.getId());
+    }
+
+    @Test
+    void testFriendMutationsDetectMissingUsers() {
+        User user = userStorage.create(new User(null, "missing" + System.nanoTime() + "@example.com", "missing",
+                "Missing", LocalDate.of(1990, 1, 1), null));
+        long missingId = Long.MAX_VALUE;
+
+        assertThatThrownBy(() -> userStorage.addFriend(user.getId(), missingId))
+                .isInstanceOf(NotFoundException.class).hasMessageContaining(String.valueOf(missingId));
+        assertThatThrownBy(() -> userStorage.addFriend(missingId, user.getId()))
+                .isInstanceOf(NotFoundException.class).hasMessageContaining(String.valueOf(missingId));
+        assertThatThrownBy(() -> userStorage.removeFriend(user.getId(), missingId))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> userStorage.getFriends(missingId)).isInstanceOf(NotFoundException.class);
+        assertThat(userStorage.getFriends(user.getId())).isEmpty();
+
+        // повторное добавление и удаление несуществующей дружбы - не ошибка
+        User friend = userStorage.create(new User(null, "missing" + System.nanoTime() + "@example.com", "friend",
+                "Friend", LocalDate.of(1990, 1, 1), null));
+        userStorage.addFriend(user.getId(), friend.getId());
+        userStorage.addFriend(user.getId(), friend.getId());
+        userStorage.removeFriend(friend.getId(), user.getId());
+        assertThat(userStorage.getFriends(user.getId())).containsExactly(friend.getId());
+
+        assertThat(userStorage.delete(user.getId())).isTrue();
+        assertThatThrownBy(() -> userStorage.delete(user.getId())).isInstanceOf(NotFoundException.class);
+        userStorage.delete(friend.getId());
+    }
+
+    @Test
+    void testFailedFriendshipWriteRollsBackRowAndGraph() {
+        User user = userStorage.create(new User(null, "rollback" + System.nanoTime() + "@example.com", "rollback",
+                "Rollback", LocalDate.of(1990, 1, 1), null));
+        User friend = userStorage.create(new User(null, "rollback" + System.nanoTime() + "@example.com", "friend",
+                "Friend", LocalDate.of(1990, 1, 1), null));
+        // увеличение версии падает с переполнением BIGINT уже после записи строки friendship
+        jdbcTemplate.update("UPDATE users SET version = ? WHERE id = ?", Long.MAX_VALUE, user.getId());
+
+        assertThatThrownBy(() -> userStorage.addFriend(user.getId(), friend.getId()))
+                .isInstanceOf(DataAccessException.class);
+        assertThat(countFriendships(user.getId(), friend.getId())).isZero();
+        assertThat(userStorage.getFriends(user.getId())).isEmpty();
+
+        jdbcTemplate.update("UPDATE users SET version = 0 WHERE id = ?", user.getId());
+        userStorage.addFriend(user.getId(), friend.getId());
+        jdbcTemplate.update("UPDATE users SET version = ? WHERE id = ?", Long.MAX_VALUE, user.getId());
+
+        assertThatThrownBy(() -> userStorage.removeFriend(user.getId(), friend.getId()))
+                .isInstanceOf(DataAccessException.class);
+        assertThat(countFriendships(user.getId(), friend.getId())).isEqualTo(1);
+        assertThat(userStorage.getFriends(user.getId())).containsExactly(friend.getId());
+
+        userStorage.delete(user.getId());
+        userStorage.delete(friend.getId());
+    }
+
+    private int countFriendships(long userId, long friendId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendship WHERE user_id = ? AND friend_id = ?",
+                Integer.class, userId, friendId);
+    }
 }
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dao.index.FriendSuggestionIndex;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipIndex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FriendSuggestionIndexTest {
+
+    private static final long USER = 1;
+    private static final long FIRST_FRIEND = 2;
+    private static final long SECOND_FRIEND = 3;
+
+    @Test
+    void testTiedScoreAtCutoffIsRankedById() {
+        // хранится один кандидат: из двух с весом 1 остаётся 20, граница невошедших - 1
+        FriendSuggestionIndex index = new FriendSuggestionIndex(new FriendshipIndex(), 1);
+        index.addFriend(USER, FIRST_FRIEND);
+        index.addFriend(FIRST_FRIEND, 20);
+        index.addFriend(FIRST_FRIEND, 30);
+        assertThat(index.suggestions(USER, 1)).containsExactly(20L);
+
+        // кандидат 10 с тем же весом 1 не помещается в сохранённые, но по id он выше 20
+        index.addFriend(SECOND_FRIEND, 10);
+        index.addFriend(USER, SECOND_FRIEND);
+
+        assertThat(index.suggestions(USER, 1)).containsExactly(10L);
+    }
+}
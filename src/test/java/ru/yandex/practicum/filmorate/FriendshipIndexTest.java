@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dao.index.FriendshipIndex;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// индекс сверяется с наивной моделью на множествах после случайных изменений
+class FriendshipIndexTest {
+
+    private static final int USERS = 400;
+    // у этого пользователя друзей во много раз больше, чем у остальных: пересечение идёт двоичным поиском
+    private static final long POPULAR = 1;
+
+    private final FriendshipIndex index = new FriendshipIndex();
+    private final Map<Long, TreeSet<Long>> model = new HashMap<>();
+
+    @Test
+    void testRandomChangesMatchNaiveSets() {
+        Random random = new Random(42);
+        for (long friendId = 2; friendId <= USERS; friendId++) {
+            change(POPULAR, friendId, true);
+        }
+        for (int i = 0; i < 2000; i++) {
+            long userId = 2 + random.nextInt(USERS - 1);
+            long friendId = 1 + random.nextInt(USERS);
+            if (userId != friendId) {
+                change(userId, friendId, random.nextInt(3) > 0);
+            }
+        }
+        int popularFriends = friendsOf(POPULAR).size();
+        assertThat(model.values()).anyMatch(friends -> !friends.isEmpty() && friends.size() * 32 <= popularFriends);
+        assertMatchesModel();
+
+        index.removeUser(POPULAR);
+        model.remove(POPULAR);
+        model.values().forEach(friends -> friends.remove(POPULAR));
+        assertMatchesModel();
+    }
+
+    @Test
+    void testPublishedArraysAreNotModified() {
+        index.add(1, 3);
+        long[] before = index.friendsOf(1);
+        index.add(1, 2);
+        index.remove(1, 3);
+
+        assertThat(before).containsExactly(3);
+        assertThat(index.friendsOf(1)).containsExactly(2);
+        assertThat(index.followersOf(3)).isEmpty();
+    }
+
+    private void change(long userId, long friendId, boolean add) {
+        TreeSet<Long> friends = model.computeIfAbsent(userId, id -> new TreeSet<>());
+        if (add) {
+            assertThat(index.add(userId, friendId)).isEqualTo(friends.add(friendId));
+        } else {
+            assertThat(index.remove(userId, friendId)).isEqualTo(friends.remove(friendId));
+        }
+    }
+
+    private void assertMatchesModel() {
+        for (long userId = 1; userId <= USERS; userId++) {
+            long id = userId;
+            assertThat(index.friendsOf(userId)).containsExactly(toArray(friendsOf(userId)));
+            TreeSet<Long> followers = new TreeSet<>();
+            model.forEach((owner, friends) -> {
+                if (friends.contains(id)) {
+                    followers.add(owner);
+                }
+            });
+            assertThat(index.followersOf(userId)).containsExactly(toArray(followers));
+            for (long otherId = 1; otherId <= USERS; otherId++) {
+                TreeSet<Long> common = new TreeSet<>(friendsOf(userId));
+                common.retainAll(friendsOf(otherId));
+                assertThat(index.commonFriends(userId, otherId)).as("общие друзья %d и %d", userId, otherId)
+                        .containsExactly(toArray(common));
+            }
+        }
+    }
+
+    private TreeSet<Long> friendsOf(long userId) {
+        return model.getOrDefault(userId, new TreeSet<>());
+    }
+
+    private static long[] toArray(TreeSet<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+}
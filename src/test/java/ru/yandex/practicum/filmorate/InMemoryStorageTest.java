@@ -0,0 +1,193 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.dao.UserStorage;
+import ru.yandex.practicum.filmorate.dao.impl.memory.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.dao.impl.memory.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "filmorate.storage=memory")
+@ActiveProfiles("test")
+class InMemoryStorageTest {
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private UserStorage userStorage;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Test
+    void testMemoryStoragesReplaceDbStorages() {
+        assertThat(filmStorage).isInstanceOf(InMemoryFilmStorage.class);
+        assertThat(userStorage).isInstanceOf(InMemoryUserStorage.class);
+    }
+
+    @Test
+    void testConcurrentCreateAssignsUniqueIds() {
+        List<Long> ids = IntStream.range(0, 1000).parallel()
+                .mapToObj(i -> userService.addUser(user("parallel" + i)).getId())
+                .toList();
+        assertThat(Set.copyOf(ids)).hasSize(1000);
+    }
+
+    @Test
+    void testFriendsLikesAndUserDeletion() {
+        User first = userService.addUser(user("first"));
+        User second = userService.addUser(user("second"));
+        User common = userService.addUser(user("common"));
+        userService.addFriend(first.getId(), common.getId());
+        userService.addFriend(second.getId(), common.getId());
+        userService.addFriend(first.getId(), second.getId());
+
+        assertThat(userService.getFriends(first.getId(), null, null, false))
+                .extracting(User::getId).containsExactly(second.getId(), common.getId());
+        assertThat(userService.getCommonFriends(first.getId(), second.getId(), null, null, false))
+                .extracting(User::getId).containsExactly(common.getId());
+
+        Film film = filmService.create(new Film(null, "Фильм", "Описание", LocalDate.of(2000, 1, 1), 100,
+                new MpaRating(1L, null), new LinkedHashSet<>(List.of(new Genre(2L, null), new Genre(1L, null)))));
+        assertThat(film.getMpaRatingId().getName()).isEqualTo("G");
+        assertThat(film.getGenreIds()).extracting(Genre::getId).containsExactly(1L, 2L);
+
+        filmService.addLike(film.getId(), first.getId());
+        filmService.addLike(film.getId(), common.getId());
+        assertThat(filmService.getTopFilms(1)).extracting(Film::getId).containsExactly(film.getId());
+        assertThat(filmService.getTopFilms(1, 2L, 2000)).extracting(Film::getId).containsExactly(film.getId());
+        assertThat(filmService.getTopFilms(10, 3L, null)).extracting(Film::getId).doesNotContain(film.getId());
+        assertThat(filmService.getTopFilms(10, null, 2001)).extracting(Film::getId).doesNotContain(film.getId());
+
+        userService.delete(common.getId());
+        assertThat(userService.getFriends(first.getId(), null, null, false))
+                .extracting(User::getId).containsExactly(second.getId());
+        filmService.removeLike(film.getId(), first.getId());
+        assertThat(filmStorage.delete(film.getId())).isTrue();
+        assertThat(filmStorage.getFilmById(film.getId())).isEmpty();
+    }
+
+    @Test
+    void testFriendSuggestionsFollowFriendshipChanges() {
+        User user = userService.addUser(user("user"));
+        User friend = userService.addUser(user("friend"));
+        User otherFriend = userService.addUser(user("otherFriend"));
+        User popular = userService.addUser(user("popular"));
+        User rare = userService.addUser(user("rare"));
+        userService.addFriend(user.getId(), friend.getId());
+        userService.addFriend(user.getId(), otherFriend.getId());
+        userService.addFriend(friend.getId(), popular.getId());
+        userService.addFriend(friend.getId(), rare.getId());
+        assertThat(userService.getFriendSuggestions(user.getId(), null, false))
+                .extracting(User::getId).containsExactly(popular.getId(), rare.getId());
+
+        userService.addFriend(otherFriend.getId(), popular.getId());
+        userService.addFriend(user.getId(), rare.getId());
+        assertThat(userService.getFriendSuggestions(user.getId(), null, false))
+                .extracting(User::getId).containsExactly(popular.getId());
+
+        userService.removeFriend(user.getId(), rare.getId());
+        userService.delete(popular.getId());
+        assertThat(userService.getFriendSuggestions(user.getId(), 1, false))
+                .extracting(User::getId).containsExactly(rare.getId());
+    }
+
+    @Test
+    void testRecommendationsFollowLikes() {
+        User user = userService.addUser(user("viewer"));
+        User similar = userService.addUser(user("similar"));
+        User other = userService.addUser(user("other"));
+        Film shared = filmService.create(film("Общий"));
+        Film recommended = filmService.create(film("Рекомендуемый"));
+        Film unrelated = filmService.create(film("Посторонний"));
+        filmService.addLike(shared.getId(), user.getId());
+        filmService.addLike(shared.getId(), similar.getId());
+        filmService.addLike(recommended.getId(), similar.getId());
+        filmService.addLike(unrelated.getId(), other.getId());
+        assertThat(recommendationService.getRecommendations(user.getId(), null))
+                .extracting(Film::getId).containsExactly(recommended.getId());
+
+        filmService.addLike(recommended.getId(), user.getId());
+        assertThat(recommendationService.getRecommendations(user.getId(), null)).isEmpty();
+
+        filmService.removeLike(recommended.getId(), user.getId());
+        filmService.delete(recommended.getId());
+        assertThat(recommendationService.getRecommendations(user.getId(), null)).isEmpty();
+        // контекст общий для тестов класса, фильмы с лайками не должны попасть в чужой топ
+        filmService.delete(shared.getId());
+        filmService.delete(unrelated.getId());
+    }
+
+    @Test
+    void testSearchByWordPrefixes() {
+        Film film = filmService.create(new Film(null, "Ёлки-палки", "Новогодняя комедия", LocalDate.of(2010, 1, 1),
+                100, new MpaRating(1L, null), null));
+        assertThat(filmService.search("ЕЛК нов", null, null)).extracting(Film::getId).containsExactly(film.getId());
+        assertThat(filmService.search("комед", "title", null)).extracting(Film::getId).doesNotContain(film.getId());
+
+        filmService.update(new Film(film.getId(), "Сосны", "Драма", LocalDate.of(2010, 1, 1), 100,
+                new MpaRating(1L, null), null));
+        assertThat(filmService.search("ёлки", null, null)).extracting(Film::getId).doesNotContain(film.getId());
+        filmService.delete(film.getId());
+        assertThat(filmService.search("сосны", "title,description", null)).isEmpty();
+    }
+
+    @Test
+    void testStoredObjectsAreNotSharedWithCallers() {
+        User created = userService.addUser(user("copy"));
+        created.setName("Изменён после создания");
+        User read = userStorage.getUserById(created.getId()).orElseThrow();
+        assertThat(read.getName()).isEqualTo("copy");
+        read.setEmail("changed@example.com");
+        read.getFriendIds().add(Long.MAX_VALUE);
+        assertThat(userStorage.getUserById(created.getId()).orElseThrow())
+                .satisfies(user -> assertThat(user.getEmail()).isNotEqualTo("changed@example.com"))
+                .satisfies(user -> assertThat(user.getFriendIds()).isEmpty());
+
+        Film film = filmService.create(film("Копия"));
+        film.setName("Изменён после создания");
+        Film readFilm = filmStorage.getFilmById(film.getId()).orElseThrow();
+        assertThat(readFilm.getName()).isEqualTo("Копия");
+        readFilm.getGenreIds().add(new Genre(1L, null));
+        filmStorage.findAll().forEach(found -> found.setDescription("Изменён в списке"));
+        assertThat(filmStorage.getFilmById(film.getId()).orElseThrow())
+                .satisfies(found -> assertThat(found.getGenreIds()).isEmpty())
+                .satisfies(found -> assertThat(found.getDescription()).isEqualTo("Описание"));
+
+        filmService.delete(film.getId());
+        userService.delete(created.getId());
+    }
+
+    private static Film film(String name) {
+        return new Film(null, name, "Описание", LocalDate.of(2000, 1, 1), 100, new MpaRating(1L, null), null);
+    }
+
+    private static User user(String login) {
+        return new User(null, login + System.nanoTime() + "@example.com", login, login,
+                LocalDate.of(1990, 1, 1), null);
+    }
+}
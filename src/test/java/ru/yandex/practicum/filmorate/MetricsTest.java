@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class MetricsTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void testDaoTimersAndSqlStatementsPerRequest() {
+        User user = userService.addUser(new User(null, "metrics" + System.nanoTime() + "@example.com",
+                "metrics", "Metrics", LocalDate.of(1990, 1, 1), null));
+
+        restTemplate.getForEntity("/users/" + user.getId(), User.class);
+
+        Timer timer = meterRegistry.find("filmorate.dao")
+                .tag("class", "ru.yandex.practicum.filmorate.dao.impl.UserDbStorage")
+                .tag("method", "getUserById")
+                .timer();
+        assertThat(timer).isNotNull();
+        assertThat(timer.count()).isPositive();
+
+        DistributionSummary statements = meterRegistry.find("filmorate.http.sql.statements")
+                .tag("method", "GET")
+                .tag("uri", "/users/{id}")
+                .summary();
+        assertThat(statements).isNotNull();
+        assertThat(statements.count()).isPositive();
+        assertThat(statements.max()).isPositive();
+    }
+
+    // число запросов к базе на список фильмов не зависит от числа фильмов и их жанров
+    @Test
+    void testFilmListsRunConstantNumberOfStatements() throws InterruptedException {
+        List<Long> filmIds = new ArrayList<>(createFilms(2));
+        Map<String, Double> few = statementsForFilmLists();
+
+        filmIds.addAll(createFilms(20));
+        Map<String, Double> many = statementsForFilmLists();
+
+        assertThat(few.values()).allSatisfy(statements -> assertThat(statements).isPositive());
+        assertThat(many).isEqualTo(few);
+        filmIds.forEach(filmService::delete);
+    }
+
+    // друзья и общие друзья читаются одним запросом к users независимо от их числа
+    @Test
+    void testFriendListsRunConstantNumberOfStatements() throws Exception {
+        User user = newUser();
+        User other = newUser();
+        List<Long> friendIds = new ArrayList<>();
+        addCommonFriends(user, other, 1, friendIds);
+        Map<String, Double> few = statementsForFriendLists(user, other);
+
+        addCommonFriends(user, other, 15, friendIds);
+        Map<String, Double> many = statementsForFriendLists(user, other);
+
+        assertThat(many).isEqualTo(few);
+        JsonNode friends = objectMapper.readTree(restTemplate.getForObject(
+                "/users/" + user.getId() + "/friends?withFriendIds=true", String.class));
+        List<Long> ids = new ArrayList<>();
+        friends.forEach(friend -> {
+            ids.add(friend.get("id").asLong());
+            assertThat(friend.get("friendIds")).isEmpty();
+        });
+        assertThat(ids).isSorted().isEqualTo(friendIds);
+        userService.delete(user.getId());
+        userService.delete(other.getId());
+        friendIds.forEach(userService::delete);
+    }
+
+    private Map<String, Double> statementsForFriendLists(User user, User other) throws InterruptedException {
+        Map<String, Double> statements = new LinkedHashMap<>();
+        statements.put("friends", statements("/users/" + user.getId() + "/friends", "/users/{id}/friends"));
+        statements.put("withFriendIds", statements("/users/" + user.getId() + "/friends?withFriendIds=true",
+                "/users/{id}/friends"));
+        statements.put("common", statements("/users/" + user.getId() + "/friends/common/" + other.getId(),
+                "/users/{id}/friends/common/{otherId}"));
+        return statements;
+    }
+
+    private void addCommonFriends(User user, User other, int count, List<Long> friendIds) {
+        for (int i = 0; i < count; i++) {
+            User friend = newUser();
+            userService.addFriend(user.getId(), friend.getId());
+            userService.addFriend(other.getId(), friend.getId());
+            friendIds.add(friend.getId());
+        }
+    }
+
+    private User newUser() {
+        return userService.addUser(new User(null, "metrics" + System.nanoTime() + "@example.com",
+                "metrics", "Metrics", LocalDate.of(1990, 1, 1), null));
+    }
+
+    private Map<String, Double> statementsForFilmLists() throws InterruptedException {
+        Map<String, Double> statements = new LinkedHashMap<>();
+        statements.put("all", statements("/films", "/films"));
+        statements.put("page", statements("/films?afterId=0&limit=1000", "/films"));
+        statements.put("popular", statements("/films/popular?count=1000", "/films/popular"));
+        return statements;
+    }
+
+    // число запросов к базе за один GET по приросту метрики маршрута
+    private double statements(String url, String uri) throws InterruptedException {
+        DistributionSummary summary = statementsSummary(uri);
+        long count = summary != null ? summary.count() : 0;
+        double total = summary != null ? summary.totalAmount() : 0;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        assertThat(restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.OK);
+        // метрика записывается после отправки ответа клиенту
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((summary = statementsSummary(uri)) == null || summary.count() == count) {
+            assertThat(System.nanoTime()).as("метрика запроса %s", url).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        return summary.totalAmount() - total;
+    }
+
+    private DistributionSummary statementsSummary(String uri) {
+        return meterRegistry.find("filmorate.http.sql.statements").tag("method", "GET").tag("uri", uri).summary();
+    }
+
+    private List<Long> createFilms(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(filmService.create(new Film(null, "Metrics " + i, "Фильм с жанрами", LocalDate.of(2000, 1, 1), 90,
+                    new MpaRating(1L, null), new LinkedHashSet<>(List.of(new Genre(1L, null), new Genre(2L, null)))))
+                    .getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class PaginationTest {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FilmService filmService;
+
+    // страницы по 3 из 7 пользователей: 3 + 3 + 1 и пустая, без пропусков и повторов на границах
+    @Test
+    void testUserPagesCoverAllIdsOnce() throws Exception {
+        List<Long> created = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            created.add(userService.addUser(new User(null, "page" + System.nanoTime() + "@example.com", "page",
+                    "Page", LocalDate.of(1990, 1, 1), null)).getId());
+        }
+        long afterId = created.get(0) - 1;
+        List<Long> all = ids(getJson("/users"));
+
+        List<Long> paged = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        List<Long> page;
+        do {
+            page = ids(getJson("/users?afterId=" + afterId + "&limit=3"));
+            if (!page.isEmpty()) {
+                assertThat(page.get(0)).isGreaterThan(afterId);
+                afterId = page.get(page.size() - 1);
+            }
+            sizes.add(page.size());
+            paged.addAll(page);
+        } while (!page.isEmpty());
+
+        assertThat(paged).doesNotHaveDuplicates().isSorted().containsSubsequence(created);
+        assertThat(paged).isEqualTo(all.stream().filter(id -> id >= created.get(0)).toList());
+        assertThat(sizes.subList(0, sizes.size() - 2)).containsOnly(3);
+        assertThat(sizes.get(sizes.size() - 1)).isZero();
+        created.forEach(userService::delete);
+    }
+
+    @Test
+    void testPageSizeOutOfRangeIsBadRequest() {
+        assertThat(get("/films?limit=0", MediaType.APPLICATION_JSON).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(get("/users?afterId=0&limit=1001", MediaType.APPLICATION_JSON).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    // одна строка NDJSON на фильм, даже если в соединении с film_genre у фильма несколько строк
+    @Test
+    void testFilmsStreamAsOneLinePerFilm() throws Exception {
+        Film film = filmService.create(new Film(null, "Поток", "Фильм с двумя жанрами", LocalDate.of(2000, 1, 1), 90,
+                new MpaRating(1L, null), new LinkedHashSet<>(List.of(new Genre(1L, null), new Genre(2L, null)))));
+
+        ResponseEntity<String> response = get("/films", NDJSON);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(NDJSON);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.getBody().split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+
+        List<Long> streamed = lines.stream().map(node -> node.get("id").asLong()).toList();
+        assertThat(streamed).doesNotHaveDuplicates().isSorted().isEqualTo(ids(getJson("/films")));
+        JsonNode streamedFilm = lines.get(streamed.indexOf(film.getId()));
+        assertThat(streamedFilm.get("genres")).extracting(genre -> genre.get("id").asLong()).containsExactly(1L, 2L);
+        assertThat(streamedFilm.get("mpa").get("name").asText()).isNotEmpty();
+        filmService.delete(film.getId());
+    }
+
+    @Test
+    void testUsersStreamInIdOrder() throws Exception {
+        ResponseEntity<String> response = get("/users", NDJSON);
+        List<Long> streamed = new ArrayList<>();
+        for (String line : response.getBody().split("\n")) {
+            streamed.add(objectMapper.readTree(line).get("id").asLong());
+        }
+        assertThat(streamed).doesNotHaveDuplicates().isSorted().isEqualTo(ids(getJson("/users")));
+    }
+
+    private JsonNode getJson(String url) throws Exception {
+        ResponseEntity<String> response = get(url, MediaType.APPLICATION_JSON);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return objectMapper.readTree(response.getBody());
+    }
+
+    private ResponseEntity<String> get(String url, MediaType accept) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(accept));
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+
+    private static List<Long> ids(JsonNode array) {
+        List<Long> ids = new ArrayList<>();
+        array.forEach(node -> ids.add(node.get("id").asLong()));
+        return ids;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dao.index.PopularFilmsIndex;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PopularFilmsIndexTest {
+
+    private static final long COMEDY = 1;
+    private static final long DRAMA = 2;
+
+    @Test
+    void testGenreAndYearFilterWalksEitherList() {
+        PopularFilmsIndex index = new PopularFilmsIndex();
+        // комедий 2000 года больше, чем драм, а фильмов 2000 года больше, чем 2010-го
+        for (long id = 1; id <= 10; id++) {
+            index.describe(id, id <= 8 ? 2000 : 2010, List.of(id % 5 == 0 ? DRAMA : COMEDY));
+            index.update(id, id);
+        }
+
+        // 2010 год меньше списка комедий: обходится год, жанр проверяется по фильму
+        assertThat(index.top(10, COMEDY, 2010)).containsExactly(9L);
+        // драм меньше, чем фильмов 2000 года: обходится жанр, год проверяется по фильму
+        assertThat(index.top(10, DRAMA, 2000)).containsExactly(5L);
+        assertThat(index.top(2, COMEDY, 2000)).containsExactly(8L, 7L);
+        assertThat(index.top(10, DRAMA, 1990)).isEmpty();
+
+        // после смены года фильм переходит в другой список, счётчики списков следуют за ним
+        index.setYear(10, 2000);
+        assertThat(index.top(10, DRAMA, 2000)).containsExactly(10L, 5L);
+        assertThat(index.top(10, DRAMA, 2010)).isEmpty();
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.dialect.PostgresDialect;
+import ru.yandex.practicum.filmorate.dao.dialect.SqlDialect;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// диалект postgres поверх H2 в режиме совместимости с PostgreSQL: тот же SQL, что уходит на сервер, без сети
+@SpringBootTest(properties = {"filmorate.db.dialect=postgres",
+        "spring.datasource.url=jdbc:h2:mem:filmorate-pg;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1"})
+@ActiveProfiles("test")
+class PostgresDialectTest {
+
+    @Autowired
+    private SqlDialect dialect;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testStoragesRunOnPostgresDialect() {
+        assertThat(dialect).isInstanceOf(PostgresDialect.class);
+        User user = newUser();
+        User friend = newUser();
+        Film film = filmService.create(new Film(null, "Postgres", "Фильм в режиме PostgreSQL",
+                LocalDate.of(2000, 1, 1), 90, new MpaRating(1L, null),
+                new LinkedHashSet<>(List.of(new Genre(1L, null)))));
+
+        userService.addFriend(user.getId(), friend.getId());
+        userService.addFriend(user.getId(), friend.getId());
+        assertThatThrownBy(() -> userService.addFriend(user.getId(), Long.MAX_VALUE))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(userService.getUserById(user.getId()).getFriendIds()).containsExactly(friend.getId());
+
+        assertThat(filmService.addLike(film.getId(), user.getId())).isTrue();
+        assertThat(filmService.addLike(film.getId(), user.getId())).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?", Long.class,
+                film.getId())).isEqualTo(1L);
+
+        film.setGenreIds(new LinkedHashSet<>(List.of(new Genre(2L, null), new Genre(1L, null))));
+        assertThat(filmService.update(film).getGenreIds()).extracting(Genre::getId).containsExactly(1L, 2L);
+    }
+
+    private User newUser() {
+        return userService.addUser(new User(null, "pg" + System.nanoTime() + "@example.com", "pg", "Postgres",
+                LocalDate.of(1990, 1, 1), null));
+    }
+}
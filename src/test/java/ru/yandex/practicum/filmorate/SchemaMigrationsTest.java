@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.migration.SchemaMigrations;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class SchemaMigrationsTest {
+
+    @Autowired
+    private SchemaMigrations schemaMigrations;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void testMigrationsRunOnce() {
+        assertThat(jdbcTemplate.queryForList("SELECT version FROM schema_migration", Integer.class)).contains(1);
+        assertThat(schemaMigrations.migrate()).isZero();
+    }
+
+    @Test
+    void testRelationKeysMigrationRemovesDuplicates() {
+        long userId = insertUser("dup-owner");
+        long friendId = insertUser("dup-friend");
+        // база прежней версии: уникального ключа нет, связь записана дважды
+        jdbcTemplate.execute("DROP INDEX uq_friendship_user_friend");
+        jdbcTemplate.update("INSERT INTO friendship (user_id, friend_id) VALUES (?, ?)", userId, friendId);
+        jdbcTemplate.update("INSERT INTO friendship (user_id, friend_id) VALUES (?, ?)", userId, friendId);
+        jdbcTemplate.update("DELETE FROM schema_migration WHERE version = 1");
+
+        assertThat(schemaMigrations.migrate()).isEqualTo(1);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendship WHERE user_id = ? AND friend_id = ?",
+                Integer.class, userId, friendId)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.indexes "
+                + "WHERE LOWER(index_name) = 'uq_friendship_user_friend'", Integer.class)).isPositive();
+        jdbcTemplate.update("DELETE FROM users WHERE id IN (?, ?)", userId, friendId);
+    }
+
+    @Test
+    void testLikesCountBackfillOrdersPopularFilms() {
+        // у фильма i - i лайков, но в films.likes_count нули, как после добавления столбца в старую базу
+        List<Long> filmIds = new ArrayList<>();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            filmIds.add(filmStorage.create(new Film(null, "Backfill " + i, "Фильм с лайками из старой базы",
+                    LocalDate.of(2000, 1, 1), 90, new MpaRating(1L, "G"), new HashSet<>())).getId());
+            userIds.add(insertUser("backfill" + i));
+        }
+        for (int i = 0; i < filmIds.size(); i++) {
+            for (int k = 0; k <= i; k++) {
+                jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)",
+                        filmIds.get(i), userIds.get(k));
+            }
+        }
+        jdbcTemplate.update("UPDATE films SET likes_count = 0");
+        jdbcTemplate.update("DELETE FROM schema_migration WHERE version = 2");
+
+        assertThat(schemaMigrations.migrate()).isEqualTo(1);
+        filmStorage.loadLikes();
+        filmStorage.loadPopularFilms();
+
+        assertThat(popularAmong(filmIds)).containsExactly(filmIds.get(2), filmIds.get(1), filmIds.get(0));
+        // счётчик после заполнения сходится с film_likes и при дальнейших изменениях
+        assertThat(filmStorage.removeLike(filmIds.get(2), userIds.get(0))).isTrue();
+        assertThat(filmStorage.removeLike(filmIds.get(2), userIds.get(1))).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?",
+                Long.class, filmIds.get(2))).isEqualTo(1);
+        assertThat(popularAmong(filmIds)).containsExactly(filmIds.get(1), filmIds.get(0), filmIds.get(2));
+
+        filmIds.forEach(filmStorage::delete);
+        userIds.forEach(id -> jdbcTemplate.update("DELETE FROM users WHERE id = ?", id));
+    }
+
+    // порядок фильмов из списка в ответе /films/popular
+    private List<Long> popularAmong(List<Long> filmIds) {
+        Film[] popular = restTemplate.getForObject("/films/popular?count=1000", Film[].class);
+        return Arrays.stream(popular).map(Film::getId).filter(filmIds::contains).toList();
+    }
+
+    // пользователь в обход хранилища: графу дружбы в памяти о нём знать не нужно
+    private long insertUser(String login) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, '1990-01-01')",
+                    new String[]{"id"});
+            statement.setString(1, login + System.nanoTime() + "@example.com");
+            statement.setString(2, login);
+            statement.setString(3, login);
+            return statement;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+}
@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.dao.impl.RelationWriteBehind;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// фоновая запись раз в час: буфер пишется только явным flush в тесте
+@SpringBootTest(properties = {"filmorate.write-behind.enabled=true", "filmorate.write-behind.flush-interval-ms=3600000"})
+@ActiveProfiles("test")
+class WriteBehindTest {
+
+    @Autowired
+    private RelationWriteBehind writeBehind;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testLikesAreVisibleBeforeFlushAndCoalesced() {
+        Film film = filmService.create(new Film(null, "Write-behind", "Отложенная запись лайков",
+                LocalDate.of(2000, 1, 1), 90, new MpaRating(1L, "G"), new HashSet<>()));
+        User first = newUser();
+        User second = newUser();
+
+        assertThat(filmService.addLike(film.getId(), first.getId())).isTrue();
+        assertThat(filmService.addLike(film.getId(), second.getId())).isTrue();
+        assertThat(filmService.removeLike(film.getId(), second.getId())).isTrue();
+        assertThat(filmService.addLike(film.getId(), first.getId())).isFalse();
+        assertThat(filmService.removeLike(film.getId(), second.getId())).isFalse();
+        assertThat(likeRows(film.getId())).isZero();
+
+        writeBehind.flush();
+        assertThat(likeRows(film.getId())).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?", Long.class,
+                film.getId())).isEqualTo(1L);
+    }
+
+    @Test
+    void testFriendshipFlushBumpsVersion() {
+        User user = newUser();
+        User friend = newUser();
+        long version = userService.findVersion(user.getId()).orElseThrow();
+
+        userService.addFriend(user.getId(), friend.getId());
+        assertThat(userService.getUserById(user.getId()).getFriendIds()).containsExactly(friend.getId());
+        assertThat(userService.findVersion(user.getId())).isEmpty();
+
+        writeBehind.flush();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendship WHERE user_id = ?",
+                Integer.class, user.getId())).isEqualTo(1);
+        assertThat(userService.findVersion(user.getId())).contains(version + 1);
+    }
+
+    @Test
+    void testFailedFlushKeepsChangesPendingAndBlocksDelete() {
+        Film film = filmService.create(new Film(null, "Write-behind failure", "Запись лайков при сбое базы",
+                LocalDate.of(2000, 1, 1), 90, new MpaRating(1L, "G"), new HashSet<>()));
+        User user = newUser();
+        User friend = newUser();
+        filmService.addLike(film.getId(), user.getId());
+        userService.addFriend(user.getId(), friend.getId());
+
+        // таблица лайков недоступна: пачка лайков не пишется, дружба за ней тоже
+        jdbcTemplate.execute("ALTER TABLE film_likes RENAME TO film_likes_unavailable");
+        try {
+            assertThatThrownBy(() -> writeBehind.flush()).isInstanceOf(DataAccessException.class);
+            // память не откатывается, изменения ждут следующей записи
+            assertThat(filmService.addLike(film.getId(), user.getId())).isFalse();
+            assertThat(userService.getUserById(user.getId()).getFriendIds()).containsExactly(friend.getId());
+            assertThat(writeBehind.hasPendingFriendships(user.getId())).isTrue();
+            // удаление начинается с записи буфера и без неё ничего не удаляет
+            assertThatThrownBy(() -> userService.delete(friend.getId())).isInstanceOf(DataAccessException.class);
+            assertThat(userService.getUserById(friend.getId())).isNotNull();
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE film_likes_unavailable RENAME TO film_likes");
+        }
+
+        writeBehind.flush();
+        assertThat(writeBehind.hasPendingFriendships(user.getId())).isFalse();
+        assertThat(likeRows(film.getId())).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?", Long.class,
+                film.getId())).isEqualTo(1L);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendship WHERE user_id = ? AND friend_id = ?",
+                Integer.class, user.getId(), friend.getId())).isEqualTo(1);
+    }
+
+    private User newUser() {
+        return userService.addUser(new User(null, "wb" + System.nanoTime() + "@example.com", "wb", "Write-behind",
+                LocalDate.of(1990, 1, 1), null));
+    }
+
+    private Integer likeRows(Long filmId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_likes WHERE film_id = ?", Integer.class, filmId);
+    }
+}
@@ -18,9 +18,14 @@ CREATE TABLE IF NOT EXISTS films
     release_date DATE CHECK (release_date <= CURRENT_DATE AND release_date >= '1895-12-28'),
     duration     BIGINT CHECK (duration > 0),
     mpa_id       INT,
+    likes_count  BIGINT DEFAULT 0 NOT NULL,
     FOREIGN KEY (mpa_id) REFERENCES mpa (id)
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count BIGINT DEFAULT 0 NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_films_likes_count ON films (likes_count DESC, id);
+
 COMMENT ON TABLE films IS 'Таблица для хранения информации о фильмах';
 COMMENT ON COLUMN films.id IS 'Уникальный идентификатор фильма';
 COMMENT ON COLUMN films.name IS 'Название фильма, не может быть пустым';
@@ -28,6 +33,7 @@ COMMENT ON COLUMN films.description IS 'Описание фильма, макс
 COMMENT ON COLUMN films.release_date IS 'Дата релиза фильма, не может быть в будущем и не может быть раньше 28 декабря 1895 года';
 COMMENT ON COLUMN films.duration IS 'Продолжительность фильма в минутах, должна быть положительным числом';
 COMMENT ON COLUMN films.mpa_id IS 'Внешний ключ к таблице рейтингов MPA';
+COMMENT ON COLUMN films.likes_count IS 'Количество лайков фильма, поддерживается вместе с таблицей film_likes';
 
 --DROP TABLE IF EXISTS genre;
 CREATE TABLE IF NOT EXISTS genre
@@ -57,8 +63,10 @@ COMMENT ON COLUMN film_genre.genre_id IS 'Идентификатор жанра,
 CREATE TABLE IF NOT EXISTS users
 (
     id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    email    VARCHAR NOT NULL UNIQUE CHECK (email ~* '^[A-Z0-9._%+-]+@[A-Z0-9.-]+\.[A-Z]{2,}$'),
-    login    VARCHAR NOT NULL CHECK (login !~* '\s'),
+    -- регистр задан в классах символов, а не оператором ~*: H2 в режиме PostgreSQL после ~* не может
+    -- изменять таблицу (ALTER TABLE падает на типе VARCHAR_IGNORECASE)
+    email    VARCHAR NOT NULL UNIQUE CHECK (email ~ '^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\.[A-Za-z]{2,}$'),
+    login    VARCHAR NOT NULL CHECK (login !~ '\s'),
     name     VARCHAR,
     birthday DATE CHECK (birthday <= CURRENT_DATE)
 );
@@ -82,9 +90,6 @@ COMMENT ON TABLE friendship IS 'Таблица для хранения инфо
 COMMENT ON COLUMN friendship.user_id IS 'Идентификатор пользователя, который отправил запрос на дружбу, внешний ключ';
 COMMENT ON COLUMN friendship.friend_id IS 'Идентификатор пользователя, которому отправлен запрос на дружбу, внешний ключ';
 
---ALTER TABLE friendship ADD CONSTRAINT friendship_pk UNIQUE (USER_ID, FRIEND_ID);
-
---CREATE INDEX idx_friendship_USER_ID on friendship (USER_ID);
 
 CREATE TABLE IF NOT EXISTS film_likes
 (
@@ -97,6 +102,22 @@ COMMENT ON COLUMN film_likes.id IS 'Уникальный идентификат
 COMMENT ON COLUMN film_likes.film_id IS 'Внешний ключ к таблице films';
 COMMENT ON COLUMN film_likes.user_id IS 'Внешний ключ к таблице users';
 
---ALTER TABLE film_likes ADD CONSTRAINT film_likes_pk UNIQUE (FILM_ID, USER_ID);
+-- Применённые однократные миграции из classpath:migration (SchemaMigrations). Сюда выносятся изменения,
+-- которым нужен проход по таблицам, чтобы он не повторялся при каждом запуске.
+-- Версия 2 схемы (уникальность связей и индексы для друзей, лайков и жанров) - миграция 1.
+CREATE TABLE IF NOT EXISTS schema_migration
+(
+    version     INT PRIMARY KEY,
+    description VARCHAR NOT NULL,
+    applied_at  TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+COMMENT ON TABLE schema_migration IS 'Номера однократных миграций, уже применённых к базе';
+
+-- Версия 3: версия строки для ETag. Увеличивается при каждом изменении представления фильма
+-- (поля, жанры) и пользователя (поля, список друзей)
+ALTER TABLE films ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
 
---CREATE INDEX idx_film_likes_USER_ID on film_likes (FILM_ID);
\ No newline at end of file
+COMMENT ON COLUMN films.version IS 'Версия строки, растёт при изменении фильма или его жанров';
+COMMENT ON COLUMN users.version IS 'Версия строки, растёт при изменении пользователя или его друзей';